@@ -0,0 +1,92 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+import study.datajpa.repository.AsyncRepositoryFacade;
+import study.datajpa.repository.MemberRepository;
+import study.datajpa.repository.TeamRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 요청 스레드 4개가 "회원 조회 + 팀 수" 를 처리하는 처리량.
+ * 요청 스레드에서 차례로 실행하는 경우와 AsyncRepositoryFacade 로 두 조회를 동시에 보내는 경우를 비교한다.
+ * <p>
+ * 동시에 보내서 줄어드는 것은 왕복 시간이므로 roundTripMillis 로 SQL 마다 왕복 시간을 흉내 낸다. (0 이면 인메모리 H2 그대로)
+ * 요청 스레드 x 2 가 커넥션 풀(10)보다 작아야 왕복이 겹친다. 풀이 다 차 있으면 처리량은 풀 크기 / 왕복 시간에서 같아진다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AsyncFanOutBenchmark {
+
+    private static final int TEAMS = 10;
+    private static final int MEMBERS = 1_000;
+
+    @Param({"0", "5"})
+    private int roundTripMillis;
+
+    private ConfigurableApplicationContext context;
+    private MemberRepository memberRepository;
+    private TeamRepository teamRepository;
+    private AsyncRepositoryFacade asyncRepositoryFacade;
+    private List<Long> memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // 2차 캐시를 끄고 매번 DB 까지 가도록 한다.
+        context = BenchmarkContext.start(new Object[]{new SimulatedRoundTrip(roundTripMillis)},
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "spring.jpa.properties.hibernate.cache.use_query_cache=false");
+        memberRepository = context.getBean(MemberRepository.class);
+        teamRepository = context.getBean(TeamRepository.class);
+        asyncRepositoryFacade = context.getBean(AsyncRepositoryFacade.class);
+
+        memberIds = new TransactionTemplate(context.getBean(PlatformTransactionManager.class)).execute(status -> {
+            List<Team> teams = new ArrayList<>();
+            for (int i = 0; i < TEAMS; i++) {
+                teams.add(teamRepository.save(new Team("team" + i)));
+            }
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < MEMBERS; i++) {
+                ids.add(memberRepository.save(new Member("member" + i, i % 50, teams.get(i % TEAMS))).getId());
+            }
+            return ids;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private Long randomMemberId() {
+        return memberIds.get(ThreadLocalRandom.current().nextInt(memberIds.size()));
+    }
+
+    @Benchmark
+    public String sequential() {
+        Member member = memberRepository.findById(randomMemberId()).orElseThrow();
+        long teamCount = teamRepository.count();
+        return member.getUsername() + teamCount;
+    }
+
+    @Benchmark
+    public String fanOut() {
+        return asyncRepositoryFacade.findMemberById(randomMemberId())
+                .thenCombine(asyncRepositoryFacade.countTeams(),
+                        (member, teamCount) -> member.orElseThrow().getUsername() + teamCount)
+                .join();
+    }
+}
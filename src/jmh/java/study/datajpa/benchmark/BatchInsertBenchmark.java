@@ -0,0 +1,80 @@
+package study.datajpa.benchmark;
+
+import org.hibernate.Session;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 처리량 단위는 rows/sec (OperationsPerInvocation = ROWS).
+ * persistOneByOne 이 기존 save() 반복, saveAllBatched 가 배치 insert 경로.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BatchInsertBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    @Param({"50", "500"})
+    int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private MemberJpaRepository memberJpaRepository;
+    private EntityManager em;
+    private TransactionTemplate transactionTemplate;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        em = context.getBean(EntityManager.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    @TearDown(Level.Invocation)
+    public void truncate() {
+        jdbcTemplate.execute("truncate table member");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void persistOneByOne() {
+        transactionTemplate.executeWithoutResult(status -> {
+            // 배치 설정 이전과 동일하게 statement 단위로 전송
+            em.unwrap(Session.class).setJdbcBatchSize(1);
+            for (int i = 0; i < ROWS; i++) {
+                memberJpaRepository.save(new Member("member" + i, i % 100));
+            }
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int saveAllBatched() {
+        List<Member> members = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            members.add(new Member("member" + i, i % 100));
+        }
+        return memberJpaRepository.saveAllBatched(members, batchSize);
+    }
+}
@@ -0,0 +1,47 @@
+package study.datajpa.benchmark;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.datajpa.DataJpaApplication;
+
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    // application.yml 설정 그대로 띄우되, 벤치마크 프로필로 인메모리 H2를 사용한다.
+    // properties 는 커맨드라인 인자로 넘겨 application.yml 보다 우선하게 한다. (builder.properties 는 기본값이라 yml 에 덮인다)
+    public static ConfigurableApplicationContext start(String... properties) {
+        return start(new Object[0], properties);
+    }
+
+    // beans 는 컨텍스트를 띄우기 전에 싱글톤으로 등록한다. (SimulatedRoundTrip 처럼 벤치마크에서만 쓰는 빈)
+    public static ConfigurableApplicationContext start(Object[] beans, String... properties) {
+        String[] args = new String[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            args[i] = "--" + properties[i];
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(DataJpaApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("benchmark")
+                .initializers(initializing -> {
+                    for (Object bean : beans) {
+                        initializing.getBeanFactory().registerSingleton(bean.getClass().getSimpleName(), bean);
+                    }
+                })
+                .run(args);
+        // 덮어쓴 값이 조용히 무시되면 다른 설정으로 잰 숫자가 나오므로 바로 실패시킨다.
+        for (String property : properties) {
+            int separator = property.indexOf('=');
+            String key = property.substring(0, separator);
+            String expected = property.substring(separator + 1);
+            String actual = context.getEnvironment().getProperty(key);
+            if (!expected.equals(actual)) {
+                context.close();
+                throw new IllegalStateException("benchmark property " + key + " is " + actual + ", expected " + expected);
+            }
+        }
+        return context;
+    }
+}
@@ -0,0 +1,62 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberRepository;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ROWS 명의 회원에서 username 으로 조회하는 시간. IndexAdvisor 가 제안한 idx_member_username_age 가 있을 때와 지웠을 때를 비교한다.
+ * 데이터는 H2 system_range 로 바로 넣는다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class IndexLookupBenchmark {
+
+    private static final int ROWS = 1_000_000;
+
+    @Param({"true", "false"})
+    private boolean indexed;
+
+    private ConfigurableApplicationContext context;
+    private MemberRepository memberRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("datajpa.index-advisor.enabled=false",
+                "datajpa.slow-query.enabled=false");
+        memberRepository = context.getBean(MemberRepository.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("insert into member (member_id, age, username, version, create_time, update_time)"
+                + " select x, mod(x, 100), concat('member', x), 0, now(), now() from system_range(1, ?)", ROWS);
+        if (!indexed) {
+            jdbcTemplate.execute("drop index idx_member_username_age");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Member> findListByUsername() {
+        return memberRepository.findListByUsername("member" + (ThreadLocalRandom.current().nextInt(ROWS) + 1));
+    }
+
+    @Benchmark
+    public List<Member> findByUsernameAndAgeGreaterThan() {
+        return memberRepository.findByUsernameAndAgeGreaterThan(
+                "member" + (ThreadLocalRandom.current().nextInt(ROWS) + 1), 10);
+    }
+}
@@ -0,0 +1,74 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.KeysetSlice;
+import study.datajpa.repository.MemberCursor;
+import study.datajpa.repository.MemberJpaRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 같은 age 의 ROWS 건에서 page 번째 페이지를 offset / keyset 으로 각각 읽는 시간 비교.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeysetPaginationBenchmark {
+
+    private static final int ROWS = 200_000;
+    private static final int PAGE_SIZE = 20;
+    private static final int AGE = 10;
+
+    @Param({"1", "100", "1000", "9999"})
+    int page;
+
+    private ConfigurableApplicationContext context;
+    private MemberJpaRepository memberJpaRepository;
+    private TransactionTemplate transactionTemplate;
+    private MemberCursor cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        transactionTemplate.setReadOnly(true);
+
+        List<Member> members = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            members.add(new Member(String.format("member%07d", i), AGE));
+        }
+        memberJpaRepository.saveAllBatched(members, 1000);
+
+        // 직전 페이지의 마지막 row 를 커서로 잡아둔다.
+        int offset = (page - 1) * PAGE_SIZE;
+        cursor = offset == 0 ? null : transactionTemplate.execute(status ->
+                MemberCursor.of(memberJpaRepository.findByPage(AGE, offset - 1, 1).get(0)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Member> offset() {
+        return transactionTemplate.execute(status ->
+                memberJpaRepository.findByPage(AGE, (page - 1) * PAGE_SIZE, PAGE_SIZE));
+    }
+
+    @Benchmark
+    public KeysetSlice<Member> keyset() {
+        return transactionTemplate.execute(status ->
+                memberJpaRepository.findByPageAfter(AGE, cursor, PAGE_SIZE));
+    }
+}
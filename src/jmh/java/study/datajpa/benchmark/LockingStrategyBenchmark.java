@@ -0,0 +1,101 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberRepository;
+import study.datajpa.repository.support.OptimisticRetryExecutor;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 소수의 인기 회원(HOT_MEMBERS)을 THREADS 개 스레드가 동시에 수정할 때 두 방식이 어떻게 동작하는지 본다.
+ * findLockById(PESSIMISTIC_WRITE) 로 잠그고 수정하는 방식과 @Version + OptimisticRetryExecutor 재시도 방식이다.
+ * 조회 비용이 같도록 두 방식 모두 id 로 찾는다.
+ * <p>
+ * 처리량만으로는 경합이 가려지므로 재시도(retries)와 실패(failures, 재시도를 다 쓰거나 잠금 대기 시간 초과) 횟수를 같이 낸다.
+ * 실패한 호출도 처리량에 들어가므로 failures 와 함께 읽는다. 재시도 횟수는 기본 설정(max-attempts) 그대로 둔다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class LockingStrategyBenchmark {
+
+    private static final int HOT_MEMBERS = 4;
+
+    private ConfigurableApplicationContext context;
+    private MemberRepository memberRepository;
+    private OptimisticRetryExecutor optimisticRetryExecutor;
+    private TransactionTemplate tx;
+    private final Long[] memberIds = new Long[HOT_MEMBERS];
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Outcomes {
+
+        public long retries;
+        public long failures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retries = 0;
+            failures = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        memberRepository = context.getBean(MemberRepository.class);
+        optimisticRetryExecutor = context.getBean(OptimisticRetryExecutor.class);
+        tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        for (int i = 0; i < HOT_MEMBERS; i++) {
+            memberIds[i] = memberRepository.save(new Member("hot" + i, 0)).getId();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void pessimistic(Outcomes outcomes) {
+        Long memberId = memberIds[ThreadLocalRandom.current().nextInt(HOT_MEMBERS)];
+        try {
+            tx.executeWithoutResult(status -> {
+                Member member = memberRepository.findLockById(memberId).orElseThrow();
+                member.setAge(member.getAge() + 1);
+            });
+        } catch (PessimisticLockingFailureException e) {
+            outcomes.failures++;
+        }
+    }
+
+    @Benchmark
+    public void optimistic(Outcomes outcomes) {
+        Long memberId = memberIds[ThreadLocalRandom.current().nextInt(HOT_MEMBERS)];
+        int[] attempts = new int[1];
+        try {
+            optimisticRetryExecutor.run("member.age", () -> {
+                attempts[0]++;
+                Member member = memberRepository.findById(memberId).orElseThrow();
+                member.setAge(member.getAge() + 1);
+            });
+        } catch (OptimisticLockingFailureException | PessimisticLockingFailureException e) {
+            outcomes.failures++;
+        } finally {
+            outcomes.retries += attempts[0] - 1;
+        }
+    }
+}
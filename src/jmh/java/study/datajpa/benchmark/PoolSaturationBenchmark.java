@@ -0,0 +1,88 @@
+package study.datajpa.benchmark;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberRepository;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 풀 크기 4 에 요청 스레드 THREADS 개가 몰릴 때의 처리량. 트랜잭션 안에서 회원을 조회하고 WORK_MILLIS 동안 커넥션을 잡고 있는다.
+ * adaptive=true 이면 AdaptivePoolSizer 가 1초마다 대기 시간을 보고 풀을 키운다. 끝나면 커넥션 평균 대기와 최종 풀 크기를 출력한다.
+ * ./gradlew jmh -PjmhArgs='PoolSaturationBenchmark'
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class PoolSaturationBenchmark {
+
+    private static final int MEMBERS = 1_000;
+    private static final long WORK_MILLIS = 2;
+
+    @Param({"false", "true"})
+    private boolean adaptive;
+
+    private ConfigurableApplicationContext context;
+    private MemberRepository memberRepository;
+    private TransactionTemplate tx;
+    private Long firstId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start(
+                "spring.datasource.hikari.maximum-pool-size=4",
+                "spring.datasource.hikari.minimum-idle=4",
+                "spring.datasource.hikari.pool-name=saturation",
+                "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                "datajpa.pool.adaptive.enabled=" + adaptive,
+                "datajpa.pool.adaptive.interval=1s",
+                "datajpa.pool.adaptive.min-size=4",
+                "datajpa.pool.adaptive.max-size=16",
+                "datajpa.pool.adaptive.step=4");
+        memberRepository = context.getBean(MemberRepository.class);
+        tx = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        firstId = tx.execute(status -> {
+            Long id = null;
+            for (int i = 0; i < MEMBERS; i++) {
+                Long saved = memberRepository.save(new Member("member" + i, i % 50)).getId();
+                id = id == null ? saved : id;
+            }
+            return id;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").tag("pool", "saturation").timer();
+        System.out.printf("%nadaptive=%s acquire mean=%.2fms max=%.2fms pool max-size=%s%n", adaptive,
+                acquire.mean(TimeUnit.MILLISECONDS), acquire.max(TimeUnit.MILLISECONDS),
+                meterRegistry.find("hikaricp.connections.max").tag("pool", "saturation").gauge().value());
+        context.close();
+    }
+
+    @Benchmark
+    public String findAndWork() {
+        Long id = firstId + ThreadLocalRandom.current().nextInt(MEMBERS);
+        return tx.execute(status -> {
+            Member member = memberRepository.findById(id).orElse(null);
+            try {
+                Thread.sleep(WORK_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return member == null ? null : member.getUsername();
+        });
+    }
+}
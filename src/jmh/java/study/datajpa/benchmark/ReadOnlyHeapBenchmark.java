@@ -0,0 +1,82 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberRepository;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 트랜잭션 안에서 엔티티를 읽어 둔 상태의 힙 사용량. 읽기 전용 트랜잭션은 dirty checking 스냅샷을 남기지 않는다.
+ * 엔티티당 유지되는 바이트는 bytesPerEntity 보조 지표로 나온다. (측정 반복 횟수만큼 합산되므로 Cnt 로 나눠서 본다)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class ReadOnlyHeapBenchmark {
+
+    private static final int MEMBERS = 20_000;
+
+    @Param({"false", "true"})
+    public boolean readOnly;
+
+    private ConfigurableApplicationContext context;
+    private MemberRepository memberRepository;
+    private TransactionTemplate tx;
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Heap {
+        public long bytesPerEntity;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        memberRepository = context.getBean(MemberRepository.class);
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            members.add(new Member("member" + i, i % 50));
+        }
+        memberRepository.saveAllBatched(members, 500);
+
+        tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(readOnly);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int loadAll(Heap heap) {
+        return tx.execute(status -> {
+            long before = usedHeap();
+            List<Member> members = memberRepository.findMemberPage(Pageable.unpaged()).getContent();
+            long after = usedHeap();
+            heap.bytesPerEntity = (after - before) / members.size();
+            return members.size();
+        });
+    }
+
+    private long usedHeap() {
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,223 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.dto.MemberDto;
+import study.datajpa.dto.MemberSearchCondition;
+import study.datajpa.dto.UsernameDto;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+import study.datajpa.repository.*;
+import study.datajpa.repository.support.CountMode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 같은 조회를 MemberJpaRepository(순수 JPA) 와 MemberRepository(Spring Data JPA) 의 각 방식으로 실행한 비용 비교.
+ * application.yml 설정을 그대로 쓰므로 Member.findByUsername 네임드 쿼리는 쿼리 캐시를 탄다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryQueryBenchmark {
+
+    private static final int TEAMS = 10;
+    private static final int MEMBERS = 1_000;
+    private static final int PAGE_SIZE = 20;
+
+    private ConfigurableApplicationContext context;
+    private MemberRepository memberRepository;
+    private MemberJpaRepository memberJpaRepository;
+    private TransactionTemplate readOnlyTx;
+
+    @State(Scope.Thread)
+    public static class Lookup {
+
+        private int sequence;
+
+        String nextUsername() {
+            return "member" + (sequence++ % MEMBERS);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        memberRepository = context.getBean(MemberRepository.class);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        TeamRepository teamRepository = context.getBean(TeamRepository.class);
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            List<Team> teams = new ArrayList<>();
+            for (int i = 0; i < TEAMS; i++) {
+                teams.add(teamRepository.save(new Team("team" + i)));
+            }
+            List<Member> members = new ArrayList<>();
+            for (int i = 0; i < MEMBERS; i++) {
+                members.add(new Member("member" + i, i % 50, teams.get(i % TEAMS)));
+            }
+            memberRepository.saveAllBatched(members, 500);
+        });
+
+        readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private <T> T inTx(Supplier<T> query) {
+        return readOnlyTx.execute(status -> query.get());
+    }
+
+    // 메서드 이름으로 만든 쿼리
+    @Benchmark
+    public List<Member> derivedQuery_springData(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> memberRepository.findByUsernameAndAgeGreaterThan(username, -1));
+    }
+
+    @Benchmark
+    public List<Member> derivedQuery_jpa(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> memberJpaRepository.findByUsernameAndAgeGreaterThen(username, -1));
+    }
+
+    // @Query JPQL
+    @Benchmark
+    public List<Member> jpqlQuery_springData(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> memberRepository.findUser(username, 0));
+    }
+
+    // 네임드 쿼리 (쿼리 캐시 적용)
+    @Benchmark
+    public List<Member> namedQuery_springData(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> memberRepository.findByUsername(username));
+    }
+
+    @Benchmark
+    public List<Member> namedQuery_jpa(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> memberJpaRepository.findByUsername(username));
+    }
+
+    // 연관 엔티티까지 읽을 때: 엔티티 그래프 vs 지연 로딩(batch fetch)
+    @Benchmark
+    public String entityGraph_springData(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> memberRepository.findEntityGraphByUsername(username).get(0).getTeam().getName());
+    }
+
+    @Benchmark
+    public String lazyTeam_springData(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> memberRepository.findListByUsername(username).get(0).getTeam().getName());
+    }
+
+    // 전체 조회: DTO 생성자 프로젝션 vs 엔티티 + fetch join
+    @Benchmark
+    public List<MemberDto> dtoProjection_all() {
+        return inTx(() -> memberRepository.findMemberDto());
+    }
+
+    @Benchmark
+    public List<Member> entityFetchJoin_all() {
+        return inTx(() -> memberRepository.findMembersByFetch());
+    }
+
+    // 인터페이스 / 클래스 프로젝션 (ColumnProjector 로 컬럼만 select)
+    @Benchmark
+    public List<UsernameOnly> interfaceProjection(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> {
+            List<UsernameOnly> result = memberRepository.findProjectionsByUsername(username);
+            result.forEach(UsernameOnly::getTeamName);
+            return result;
+        });
+    }
+
+    @Benchmark
+    public List<UsernameDto> classProjection(Lookup lookup) {
+        String username = lookup.nextUsername();
+        return inTx(() -> memberRepository.findClassProjectionByUsername(username));
+    }
+
+    // 선택 조건 검색: 매번 Criteria 를 만드는 Specification / Example vs 모양별 JPQL 캐시
+    @Benchmark
+    public Object search_specification(Lookup lookup) {
+        String prefix = lookup.nextUsername();
+        Specification<Member> spec = (root, query, cb) -> cb.and(
+                cb.like(root.get("username"), prefix + "%"),
+                cb.greaterThanOrEqualTo(root.get("age"), 10),
+                cb.equal(root.join("team").get("name"), "team1"));
+        return inTx(() -> memberRepository.findAll(spec, PageRequest.of(0, PAGE_SIZE, Sort.by("age"))));
+    }
+
+    @Benchmark
+    public Object search_cachedShape(Lookup lookup) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernamePrefix(lookup.nextUsername());
+        condition.setAgeGoe(10);
+        condition.setTeamName("team1");
+        return inTx(() -> memberRepository.search(condition, PageRequest.of(0, PAGE_SIZE, Sort.by("age"))));
+    }
+
+    @Benchmark
+    public Object example_criteria(Lookup lookup) {
+        Example<Member> example = Example.of(new Member(lookup.nextUsername()), ExampleMatcher.matching().withIgnorePaths("age"));
+        return inTx(() -> memberRepository.findAll(example));
+    }
+
+    @Benchmark
+    public Object example_cachedShape(Lookup lookup) {
+        Example<Member> example = Example.of(new Member(lookup.nextUsername()), ExampleMatcher.matching().withIgnorePaths("age"));
+        return inTx(() -> memberRepository.findAllByExampleCached(example));
+    }
+
+    // 페이징
+    @Benchmark
+    public Object paging_slice_springData() {
+        return inTx(() -> memberRepository.findByAge(10, PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Direction.DESC, "username"))));
+    }
+
+    @Benchmark
+    public Object paging_page_springData() {
+        return inTx(() -> memberRepository.findMemberPage(PageRequest.of(1, PAGE_SIZE)));
+    }
+
+    @Benchmark
+    public Object paging_offsetAndCount_jpa() {
+        return inTx(() -> {
+            List<Member> content = memberJpaRepository.findByPage(10, 0, PAGE_SIZE);
+            return content.size() + memberJpaRepository.totalCount(10);
+        });
+    }
+
+    @Benchmark
+    public Object paging_cachedCount_jpa() {
+        return inTx(() -> memberJpaRepository.findPageByAge(10, PageRequest.of(0, 10), CountMode.CACHED));
+    }
+
+    @Benchmark
+    public Object paging_keyset_jpa() {
+        return inTx(() -> memberJpaRepository.findByPageAfter(10, null, PAGE_SIZE));
+    }
+}
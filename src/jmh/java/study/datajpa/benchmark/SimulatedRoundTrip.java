@@ -0,0 +1,33 @@
+package study.datajpa.benchmark;
+
+import study.datajpa.repository.support.StatementListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SQL 을 보낼 때마다 정해진 시간만큼 멈춰 원격 DB 와의 왕복 시간을 흉내 낸다.
+ * 인메모리 H2 는 왕복이 없어서, 왕복을 겹쳐 보내는 쪽(AsyncFanOutBenchmark 등)의 차이가 보이지 않는다.
+ */
+class SimulatedRoundTrip implements StatementListener {
+
+    private final long nanos;
+
+    SimulatedRoundTrip(long millis) {
+        this.nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        if (nanos > 0) {
+            long deadline = System.nanoTime() + nanos;
+            for (long left = nanos; left > 0; left = deadline - System.nanoTime()) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package study.datajpa.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 동기화 작업처럼 id 가 정해진 회원 ROWS 명(절반은 이미 있는 행)을 저장하는 처리량. 단위는 rows/sec.
+ * saveAll 은 행마다 select 후 insert/update, upsertAll 은 청크마다 id 조회 한 번과 merge into 배치.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class UpsertBenchmark {
+
+    private static final int ROWS = 2_000;
+    // 시퀀스가 만드는 id 와 겹치지 않게 큰 값에서 시작한다.
+    private static final long FIRST_ID = 1_000_000;
+
+    private ConfigurableApplicationContext context;
+    private MemberRepository memberRepository;
+    private TransactionTemplate transactionTemplate;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start("spring.jpa.properties.hibernate.cache.use_second_level_cache=false");
+        memberRepository = context.getBean(MemberRepository.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    // 매번 앞 절반만 있는 상태에서 시작한다.
+    @Setup(Level.Invocation)
+    public void seed() {
+        jdbcTemplate.execute("truncate table member");
+        jdbcTemplate.update("insert into member (member_id, age, username, version, create_time, update_time)"
+                + " select x, 0, concat('member', x), 0, now(), now() from system_range(?, ?)",
+                FIRST_ID, FIRST_ID + ROWS / 2 - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void saveAll() {
+        transactionTemplate.executeWithoutResult(status -> memberRepository.saveAll(members()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public int upsertAll() {
+        return memberRepository.upsertAll(members()).getTotal();
+    }
+
+    private static List<Member> members() {
+        List<Member> members = new ArrayList<>(ROWS);
+        for (long id = FIRST_ID; id < FIRST_ID + ROWS; id++) {
+            Member member = new Member("synced" + id, (int) (id % 100));
+            member.setId(id);
+            // 동기화 원본은 버전을 들고 온다. null 이면 save 가 새 엔티티로 보고 persist 한다.
+            member.setVersion(0L);
+            members.add(member);
+        }
+        return members;
+    }
+}
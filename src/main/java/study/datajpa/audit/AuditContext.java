@@ -0,0 +1,69 @@
+package study.datajpa.audit;
+
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 트랜잭션마다 감사 시각과 작성자를 한 번만 구해 재사용한다.
+ * 대량 저장에서도 now() 와 AuditorAware 호출은 트랜잭션당 한 번이고, 같은 트랜잭션의 쓰기는 같은 시각을 가진다.
+ */
+@Component
+public class AuditContext {
+
+    private final Clock clock;
+    private final AuditorAware<String> auditorAware;
+
+    public AuditContext(Clock clock, AuditorAware<String> auditorAware) {
+        this.clock = clock;
+        this.auditorAware = auditorAware;
+    }
+
+    public AuditStamp current() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return newStamp();
+        }
+        AuditStamp stamp = (AuditStamp) TransactionSynchronizationManager.getResource(this);
+        if (stamp == null) {
+            stamp = newStamp();
+            TransactionSynchronizationManager.bindResource(this, stamp);
+            TransactionSynchronizationManager.registerSynchronization(new StampSynchronization(stamp));
+        }
+        return stamp;
+    }
+
+    // DB(TIMESTAMP) 정밀도인 마이크로초로 자른다. 2차 캐시에 들어간 값과 DB 값이 달라 워터마크 비교가 어긋나지 않도록.
+    private AuditStamp newStamp() {
+        return new AuditStamp(LocalDateTime.now(clock).truncatedTo(ChronoUnit.MICROS), auditorAware.getCurrentAuditor().orElse(null));
+    }
+
+    // REQUIRES_NEW 로 바깥 트랜잭션이 중단되면 그동안은 새 트랜잭션이 자기 시각을 갖도록 함께 내렸다가 되돌린다.
+    private class StampSynchronization implements TransactionSynchronization {
+
+        private final AuditStamp stamp;
+
+        StampSynchronization(AuditStamp stamp) {
+            this.stamp = stamp;
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResourceIfPossible(AuditContext.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(AuditContext.this, stamp);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(AuditContext.this);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package study.datajpa.audit;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class AuditStamp {
+
+    private final LocalDateTime time;
+    private final String auditor;
+}
@@ -0,0 +1,27 @@
+package study.datajpa.audit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.AuditorAware;
+
+import java.time.Clock;
+import java.util.Optional;
+
+@Configuration
+public class AuditingConfig {
+
+    // 테스트나 배치에서 Clock.fixed(...) 빈을 등록하면 감사 시각이 고정된다.
+    @Bean
+    @ConditionalOnMissingBean
+    public Clock auditClock() {
+        return Clock.systemDefaultZone();
+    }
+
+    // 인증 정보가 없으므로 기본값은 system 이다. 로그인 사용자를 쓰려면 AuditorAware 빈을 등록한다.
+    @Bean
+    @ConditionalOnMissingBean
+    public AuditorAware<String> auditorProvider() {
+        return () -> Optional.of("system");
+    }
+}
@@ -0,0 +1,117 @@
+package study.datajpa.audit;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreInsertEventListener;
+import org.hibernate.event.spi.PreUpdateEvent;
+import org.hibernate.event.spi.PreUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+import study.datajpa.entity.JpaBaseEntity;
+import study.datajpa.repository.support.HibernateIntegrators;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JpaBaseEntity 의 감사 컬럼을 Hibernate 이벤트에서 채운다.
+ * 엔티티 필드는 직접 호출로, 이미 만들어진 INSERT/UPDATE 상태 배열은 미리 찾아 둔 인덱스로 갱신하므로 리플렉션이 없다.
+ */
+@Component
+public class AuditingEventListener implements PreInsertEventListener, PreUpdateEventListener,
+        HibernatePropertiesCustomizer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final AuditContext auditContext;
+    private final Map<String, AuditIndexes> indexes = new ConcurrentHashMap<>();
+
+    public AuditingEventListener(AuditContext auditContext) {
+        this.auditContext = auditContext;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        HibernateIntegrators.append(hibernateProperties, new AuditingIntegrator());
+    }
+
+    @Override
+    public boolean onPreInsert(PreInsertEvent event) {
+        if (event.getEntity() instanceof JpaBaseEntity) {
+            AuditStamp stamp = auditContext.current();
+            ((JpaBaseEntity) event.getEntity()).markCreated(stamp.getTime(), stamp.getAuditor());
+
+            AuditIndexes idx = indexes(event.getPersister());
+            Object[] state = event.getState();
+            set(state, idx.createTime, stamp.getTime());
+            set(state, idx.updateTime, stamp.getTime());
+            set(state, idx.createdBy, stamp.getAuditor());
+            set(state, idx.lastModifiedBy, stamp.getAuditor());
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onPreUpdate(PreUpdateEvent event) {
+        if (event.getEntity() instanceof JpaBaseEntity) {
+            AuditStamp stamp = auditContext.current();
+            ((JpaBaseEntity) event.getEntity()).markModified(stamp.getTime(), stamp.getAuditor());
+
+            AuditIndexes idx = indexes(event.getPersister());
+            Object[] state = event.getState();
+            set(state, idx.updateTime, stamp.getTime());
+            set(state, idx.lastModifiedBy, stamp.getAuditor());
+        }
+        return false;
+    }
+
+    private AuditIndexes indexes(EntityPersister persister) {
+        return indexes.computeIfAbsent(persister.getEntityName(),
+                name -> new AuditIndexes(Arrays.asList(persister.getPropertyNames())));
+    }
+
+    private static void set(Object[] state, int index, Object value) {
+        if (index >= 0) {
+            state[index] = value;
+        }
+    }
+
+    private static class AuditIndexes {
+
+        final int createTime;
+        final int updateTime;
+        final int createdBy;
+        final int lastModifiedBy;
+
+        AuditIndexes(List<String> propertyNames) {
+            this.createTime = propertyNames.indexOf("createTime");
+            this.updateTime = propertyNames.indexOf("updateTime");
+            this.createdBy = propertyNames.indexOf("createdBy");
+            this.lastModifiedBy = propertyNames.indexOf("lastModifiedBy");
+        }
+    }
+
+    private class AuditingIntegrator implements Integrator {
+
+        @Override
+        public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                              SessionFactoryServiceRegistry serviceRegistry) {
+            EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+            registry.appendListeners(EventType.PRE_INSERT, AuditingEventListener.this);
+            registry.appendListeners(EventType.PRE_UPDATE, AuditingEventListener.this);
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory,
+                                 SessionFactoryServiceRegistry serviceRegistry) {
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package study.datajpa.datasource;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Hikari 가 기록하는 커넥션 대기 시간(hikaricp.connections.acquire)을 구간마다 보고 최대 풀 크기를 조절한다.
+ * <ul>
+ *     <li>구간 평균 대기가 targetWait 를 넘으면 step 만큼 키운다. (maxSize 까지)</li>
+ *     <li>평균 대기가 targetWait 의 1/4 미만인 구간이 shrinkAfter 번 이어지고 사용 중인 커넥션이 여유가 있으면 step 만큼 줄인다. (minSize 까지)</li>
+ * </ul>
+ * 풀 크기를 늘려도 DB 가 감당하지 못하면 대기만 DB 쪽으로 옮겨 가므로 maxSize 는 DB 의 최대 연결 수 안에서 잡는다.
+ * <p>
+ * 풀 크기에 맞춰 둔 다른 자원(조회 스레드 풀 등)은 {@link #addResizeListener} 로 바뀐 크기를 받는다.
+ */
+@Slf4j
+public class AdaptivePoolSizer implements InitializingBean, DisposableBean {
+
+    private final HikariDataSource dataSource;
+    private final MeterRegistry meterRegistry;
+    private final PoolProperties.Adaptive properties;
+    private final List<IntConsumer> resizeListeners = new CopyOnWriteArrayList<>();
+
+    private long lastCount;
+    private double lastTotalNanos;
+    private int quietIntervals;
+    private ScheduledExecutorService scheduler;
+
+    public AdaptivePoolSizer(HikariDataSource dataSource, MeterRegistry meterRegistry, PoolProperties.Adaptive properties) {
+        this.dataSource = dataSource;
+        this.meterRegistry = meterRegistry;
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        meterRegistry.gauge("datajpa.pool.max-size", Tags.of("pool", dataSource.getPoolName()),
+                dataSource, HikariDataSource::getMaximumPoolSize);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "adaptive-pool-sizer-" + dataSource.getPoolName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::adjustSafely, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public void addResizeListener(IntConsumer listener) {
+        resizeListeners.add(listener);
+    }
+
+    private void adjustSafely() {
+        try {
+            adjust();
+        } catch (RuntimeException e) {
+            log.warn("failed to adjust pool {}", dataSource.getPoolName(), e);
+        }
+    }
+
+    // 지난 호출 이후 구간을 보고 최대 풀 크기를 정한다. 바뀐 크기를 돌려준다.
+    int adjust() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        HikariConfigMXBean config = dataSource.getHikariConfigMXBean();
+        int size = config.getMaximumPoolSize();
+        if (pool == null) {
+            return size;
+        }
+
+        double averageWaitNanos = intervalAverageWaitNanos();
+        long targetNanos = properties.getTargetWait().toNanos();
+        int target = size;
+
+        if (averageWaitNanos > targetNanos) {
+            quietIntervals = 0;
+            target = Math.min(properties.getMaxSize(), size + properties.getStep());
+        } else if (averageWaitNanos < targetNanos / 4.0) {
+            quietIntervals++;
+            if (quietIntervals >= properties.getShrinkAfter()
+                    && pool.getActiveConnections() <= size - properties.getStep()) {
+                quietIntervals = 0;
+                target = Math.max(properties.getMinSize(), size - properties.getStep());
+            }
+        } else {
+            quietIntervals = 0;
+        }
+
+        if (target != size) {
+            if (config.getMinimumIdle() > target) {
+                config.setMinimumIdle(target);
+            }
+            config.setMaximumPoolSize(target);
+            log.info("pool {} maximum size {} -> {} (average wait {}ms, waiting threads {})",
+                    dataSource.getPoolName(), size, target, TimeUnit.NANOSECONDS.toMillis((long) averageWaitNanos),
+                    pool.getThreadsAwaitingConnection());
+            for (IntConsumer listener : resizeListeners) {
+                listener.accept(target);
+            }
+        }
+        return target;
+    }
+
+    private double intervalAverageWaitNanos() {
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").tag("pool", dataSource.getPoolName()).timer();
+        if (acquire == null) {
+            return 0;
+        }
+        long count = acquire.count();
+        double totalNanos = acquire.totalTime(TimeUnit.NANOSECONDS);
+        long intervalCount = count - lastCount;
+        double intervalNanos = totalNanos - lastTotalNanos;
+        lastCount = count;
+        lastTotalNanos = totalNanos;
+        return intervalCount == 0 ? 0 : intervalNanos / intervalCount;
+    }
+}
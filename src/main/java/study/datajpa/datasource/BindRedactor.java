@@ -0,0 +1,101 @@
+package study.datajpa.datasource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 바인딩 값을 로그용 문자열로 바꾼다. 파라미터 위치(?)마다 SQL 에서 비교/대입 대상 컬럼을 찾아
+ * 가릴 컬럼이면 **** 로, 긴 값은 maxValueLength 에서 자른다.
+ * <p>
+ * 가릴 컬럼이 하나라도 설정돼 있으면 컬럼을 찾지 못한 값(lower(password) = ?, x = lower(?), merge 등)도 가린다.
+ */
+class BindRedactor {
+
+    static final String MASK = "****";
+
+    private static final Pattern INSERT =
+            Pattern.compile("(?is)^\\s*insert\\s+into\\s+\\S+\\s*\\(([^)]*)\\)\\s*values\\s*\\(([^)]*)\\)\\s*$");
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\s*\\?\\s*");
+    private static final Pattern COMPARED_COLUMN =
+            Pattern.compile("(?is)([\\w.]+)\\s*(?:=|<>|!=|<=|>=|<|>|\\blike|\\bin\\s*\\((?:\\s*\\?\\s*,)*)\\s*$");
+
+    private final Set<String> redactColumns;
+    private final int maxValueLength;
+
+    BindRedactor(Iterable<String> redactColumns, int maxValueLength) {
+        List<String> columns = new ArrayList<>();
+        redactColumns.forEach(column -> columns.add(column.toLowerCase(Locale.ROOT)));
+        this.redactColumns = Set.copyOf(columns);
+        this.maxValueLength = maxValueLength;
+    }
+
+    String format(String sql, Object[] values, int count) {
+        if (count == 0) {
+            return "[]";
+        }
+        String[] columns = redactColumns.isEmpty() ? new String[count] : parameterColumns(sql, count);
+        List<String> formatted = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String column = columns[i];
+            formatted.add(redacted(column) ? MASK : formatValue(values[i]));
+        }
+        return formatted.stream().collect(Collectors.joining(", ", "[", "]"));
+    }
+
+    private boolean redacted(String column) {
+        return !redactColumns.isEmpty() && (column == null || redactColumns.contains(column));
+    }
+
+    private String formatValue(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        String text = String.valueOf(value);
+        if (text.length() > maxValueLength) {
+            text = text.substring(0, maxValueLength) + "...";
+        }
+        return value instanceof CharSequence ? "'" + text + "'" : text;
+    }
+
+    // i 번째 ? 에 대응하는 컬럼명(별칭 제외, 소문자). 찾지 못하면 null
+    static String[] parameterColumns(String sql, int count) {
+        String[] columns = new String[count];
+        // values 가 모두 ? 이고 컬럼 수와 같을 때만 순서대로 맞춘다. (values (?, lower(?)) 같은 식은 모른다)
+        Matcher insert = INSERT.matcher(sql);
+        if (insert.find()) {
+            String[] names = insert.group(1).split(",");
+            String[] placeholders = insert.group(2).split(",", -1);
+            if (names.length == placeholders.length
+                    && Arrays.stream(placeholders).allMatch(value -> PLACEHOLDER.matcher(value).matches())) {
+                for (int i = 0; i < count && i < names.length; i++) {
+                    columns[i] = columnName(names[i]);
+                }
+            }
+            return columns;
+        }
+
+        int index = 0;
+        boolean quoted = false;
+        for (int pos = 0; pos < sql.length() && index < count; pos++) {
+            char c = sql.charAt(pos);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (c == '?' && !quoted) {
+                Matcher compared = COMPARED_COLUMN.matcher(sql.substring(Math.max(0, pos - 200), pos));
+                columns[index++] = compared.find() ? columnName(compared.group(1)) : null;
+            }
+        }
+        return columns;
+    }
+
+    private static String columnName(String qualified) {
+        String name = qualified.trim();
+        return name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,178 @@
+package study.datajpa.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import study.datajpa.repository.support.RepositoryInvocationContext;
+import study.datajpa.repository.support.StatementListener;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 빌려 간 커넥션(lease)마다 스레드, 빌린 시각, 마지막으로 SQL 을 실행한 리포지토리 메서드를 기록하고
+ * leakThreshold 이상 돌아오지 않은 lease 를 누수로 보고한다. (datajpa.pool.leaks, method 태그)
+ * Hikari 의 leakDetectionThreshold 는 빌린 지점의 스택만 남기므로 서비스 트랜잭션에서 빌린 커넥션은 어느 쿼리가 잡고 있었는지 알기 어렵다.
+ */
+@Slf4j
+public class ConnectionLeaseTracker implements StatementListener, InitializingBean, DisposableBean {
+
+    private final Duration leakThreshold;
+    private final MeterRegistry meterRegistry;
+    private final RepositoryInvocationContext invocationContext;
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<Lease> current = new ThreadLocal<>();
+    private ScheduledExecutorService leakChecker;
+
+    public ConnectionLeaseTracker(Duration leakThreshold, MeterRegistry meterRegistry,
+                                  RepositoryInvocationContext invocationContext) {
+        this.leakThreshold = leakThreshold;
+        this.meterRegistry = meterRegistry;
+        this.invocationContext = invocationContext;
+    }
+
+    public boolean isEnabled() {
+        return !leakThreshold.isZero();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!isEnabled()) {
+            return;
+        }
+        leakChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-leak-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(leakThreshold.toMillis() / 2, 1);
+        leakChecker.scheduleWithFixedDelay(this::checkLeaks, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (leakChecker != null) {
+            leakChecker.shutdownNow();
+        }
+    }
+
+    public DataSource track(DataSource dataSource) {
+        return new LeaseTrackingDataSource(dataSource);
+    }
+
+    public int openLeases() {
+        return leases.size();
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        Lease lease = current.get();
+        if (lease != null) {
+            String method = invocationContext.currentName();
+            if (method != null) {
+                lease.method = method;
+            }
+        }
+    }
+
+    void checkLeaks() {
+        long now = System.nanoTime();
+        for (Lease lease : leases) {
+            long heldNanos = now - lease.acquiredNanos;
+            if (!lease.reported && heldNanos >= leakThreshold.toNanos()) {
+                lease.reported = true;
+                meterRegistry.counter("datajpa.pool.leaks", "method", String.valueOf(lease.method)).increment();
+                log.warn("connection held for {}ms by {} on thread {} (leak threshold {}ms)",
+                        TimeUnit.NANOSECONDS.toMillis(heldNanos), lease.method, lease.thread.getName(),
+                        leakThreshold.toMillis());
+            }
+        }
+    }
+
+    private Connection acquire(Connection connection) {
+        Lease lease = new Lease(Thread.currentThread(), invocationContext.currentName(), current.get());
+        leases.add(lease);
+        current.set(lease);
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close")) {
+                        release(lease);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    private void release(Lease lease) {
+        if (!leases.remove(lease)) {
+            return;
+        }
+        if (current.get() == lease) {
+            if (lease.previous == null) {
+                current.remove();
+            } else {
+                current.set(lease.previous);
+            }
+        }
+        if (lease.reported) {
+            log.info("leaked connection from {} returned after {}ms", lease.method,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lease.acquiredNanos));
+        }
+    }
+
+    private static class Lease {
+
+        final Thread thread;
+        final long acquiredNanos = System.nanoTime();
+        final Lease previous;
+        volatile String method;
+        volatile boolean reported;
+
+        Lease(Thread thread, String method, Lease previous) {
+            this.thread = thread;
+            this.method = method;
+            this.previous = previous;
+        }
+    }
+
+    private class LeaseTrackingDataSource extends DelegatingDataSource implements Closeable {
+
+        LeaseTrackingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return acquire(obtainTargetDataSource().getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return acquire(obtainTargetDataSource().getConnection(username, password));
+        }
+
+        // 감싼 빈을 대신하므로 원래 DataSource 의 종료도 넘겨준다.
+        @Override
+        public void close() throws IOException {
+            if (getTargetDataSource() instanceof Closeable) {
+                ((Closeable) getTargetDataSource()).close();
+            }
+        }
+    }
+}
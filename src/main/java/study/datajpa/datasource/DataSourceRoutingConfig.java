@@ -0,0 +1,75 @@
+package study.datajpa.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * datajpa.routing.enabled=true 이면 spring.datasource 를 primary 로, datajpa.routing.replicas 를 읽기 전용 replica 로 쓴다.
+ * replica 의 스키마와 데이터는 복제로 맞춰져 있다고 가정한다. (ddl-auto 는 primary 에만 적용된다)
+ */
+@Configuration
+@EnableConfigurationProperties(ReplicaRoutingProperties.class)
+@ConditionalOnProperty(prefix = "datajpa.routing", name = "enabled", havingValue = "true")
+public class DataSourceRoutingConfig {
+
+    @Bean
+    public ReadYourWritesTracker readYourWritesTracker(ReplicaRoutingProperties properties) {
+        return new ReadYourWritesTracker(properties.getMaxReplicaLag());
+    }
+
+    @Bean
+    public ReadYourWritesRequestFilter readYourWritesRequestFilter(ReadYourWritesTracker tracker) {
+        return new ReadYourWritesRequestFilter(tracker);
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource dataSource = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(HikariDataSource primaryDataSource,
+                                                             DataSourceProperties dataSourceProperties,
+                                                             ReplicaRoutingProperties properties,
+                                                             ReadYourWritesTracker tracker) {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (ReplicaRoutingProperties.Replica replica : properties.getReplicas()) {
+            HikariDataSource dataSource = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(dataSourceProperties.determineDriverClassName())
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .build();
+            dataSource.setPoolName(replica.getName());
+            dataSource.setReadOnly(true);
+            replicas.put(replica.getName(), dataSource);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, tracker,
+                properties.getHealthCheckInterval(), properties.getMaxReplicaLag(), properties.getLagQuery());
+    }
+
+    // JPA 는 이 빈을 쓴다. 트랜잭션이 readOnly 로 시작된 뒤 첫 SQL 시점에 실제 커넥션을 고르도록 지연시킨다.
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+}
@@ -0,0 +1,39 @@
+package study.datajpa.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "datajpa.pool")
+public class PoolProperties {
+
+    // 커넥션을 이 시간 이상 돌려주지 않으면 누수로 보고 마지막으로 SQL 을 실행한 리포지토리 메서드와 함께 남긴다. 0 이면 끈다.
+    private Duration leakThreshold = Duration.ofSeconds(30);
+
+    private Adaptive adaptive = new Adaptive();
+
+    @Getter
+    @Setter
+    public static class Adaptive {
+
+        private boolean enabled;
+
+        private Duration interval = Duration.ofSeconds(10);
+
+        // 구간 평균 커넥션 대기 시간이 이 값을 넘으면 풀을 키운다.
+        private Duration targetWait = Duration.ofMillis(10);
+
+        private int minSize = 5;
+
+        private int maxSize = 30;
+
+        private int step = 2;
+
+        // 대기가 거의 없는 구간이 이만큼 이어지면 한 step 줄인다.
+        private int shrinkAfter = 3;
+    }
+}
@@ -0,0 +1,61 @@
+package study.datajpa.datasource;
+
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceUnwrapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import study.datajpa.repository.support.RepositoryInvocationContext;
+
+import javax.sql.DataSource;
+import java.util.Objects;
+
+/**
+ * 커넥션 풀 관측/조정. 대기 시간 히스토그램은 Hikari 가 기록하는 hikaricp.connections.acquire 를 application.yml 에서 켠다.
+ * <ul>
+ *     <li>datajpa.pool.leak-threshold 가 0 보다 크면 dataSource 빈을 {@link ConnectionLeaseTracker} 로 감싼다.</li>
+ *     <li>datajpa.pool.adaptive.enabled=true 이면 primary Hikari 풀에 {@link AdaptivePoolSizer} 를 붙인다.</li>
+ * </ul>
+ */
+@Configuration
+@EnableConfigurationProperties(PoolProperties.class)
+public class PoolTelemetryConfig {
+
+    @Bean
+    public ConnectionLeaseTracker connectionLeaseTracker(PoolProperties properties, MeterRegistry meterRegistry,
+                                                         RepositoryInvocationContext invocationContext) {
+        return new ConnectionLeaseTracker(properties.getLeakThreshold(), meterRegistry, invocationContext);
+    }
+
+    // DataSource 보다 먼저 만들어지는 BeanPostProcessor 이므로 추적기는 감쌀 때 꺼낸다.
+    @Bean
+    public static BeanPostProcessor connectionLeaseTrackerPostProcessor(ObjectProvider<ConnectionLeaseTracker> tracker) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!SlowQueryConfig.DATA_SOURCE_BEAN.equals(beanName) || !(bean instanceof DataSource)) {
+                    return bean;
+                }
+                ConnectionLeaseTracker leaseTracker = tracker.getObject();
+                return leaseTracker.isEnabled() ? leaseTracker.track((DataSource) bean) : bean;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "datajpa.pool.adaptive", name = "enabled", havingValue = "true")
+    public AdaptivePoolSizer adaptivePoolSizer(ObjectProvider<DataSource> dataSources, MeterRegistry meterRegistry,
+                                               PoolProperties properties) {
+        HikariDataSource primary = dataSources.orderedStream()
+                .map(dataSource -> DataSourceUnwrapper.unwrap(dataSource, HikariConfigMXBean.class, HikariDataSource.class))
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("adaptive pool sizing needs a HikariDataSource"));
+        return new AdaptivePoolSizer(primary, meterRegistry, properties.getAdaptive());
+    }
+}
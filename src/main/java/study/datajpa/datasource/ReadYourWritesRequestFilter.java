@@ -0,0 +1,29 @@
+package study.datajpa.datasource;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 요청이 끝나면 쓰기 기록을 지운다. 풀의 스레드가 다음 요청에서 이전 요청의 쓰기 때문에 primary 로 가지 않도록 한다.
+ */
+@RequiredArgsConstructor
+public class ReadYourWritesRequestFilter extends OncePerRequestFilter {
+
+    private final ReadYourWritesTracker tracker;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            tracker.clear();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package study.datajpa.datasource;
+
+import study.datajpa.repository.support.StatementListener;
+
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * 스레드(요청)별 마지막 쓰기 시각을 기록한다. 쓰기 후 복제 지연 허용치 안에서는 읽기도 primary 로 보내야 방금 쓴 데이터가 보인다.
+ * Hibernate 가 보내는 insert/update/delete/merge SQL 로 쓰기를 감지한다.
+ */
+public class ReadYourWritesTracker implements StatementListener {
+
+    private static final Pattern WRITE_STATEMENT =
+            Pattern.compile("^\\s*(?:insert|update|delete|merge)\\b", Pattern.CASE_INSENSITIVE);
+
+    private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+    private final long windowNanos;
+
+    public ReadYourWritesTracker(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        if (WRITE_STATEMENT.matcher(sql).find()) {
+            recordWrite();
+        }
+    }
+
+    public void recordWrite() {
+        lastWrite.set(System.nanoTime());
+    }
+
+    public boolean isSticky() {
+        Long writtenAt = lastWrite.get();
+        if (writtenAt == null) {
+            return false;
+        }
+        if (System.nanoTime() - writtenAt < windowNanos) {
+            return true;
+        }
+        lastWrite.remove();
+        return false;
+    }
+
+    // 다른 스레드에서 실행할 작업에 현재 스레드의 쓰기 기록을 넘긴다. (TaskDecorator 로 사용)
+    public Runnable propagate(Runnable task) {
+        Long writtenAt = lastWrite.get();
+        return () -> {
+            Long previous = lastWrite.get();
+            set(writtenAt);
+            try {
+                task.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    private void set(Long writtenAt) {
+        if (writtenAt == null) {
+            lastWrite.remove();
+        } else {
+            lastWrite.set(writtenAt);
+        }
+    }
+
+    public void clear() {
+        lastWrite.remove();
+    }
+}
@@ -0,0 +1,178 @@
+package study.datajpa.datasource;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 읽기 전용 트랜잭션의 커넥션은 정상인 replica 중 하나에서, 나머지는 primary 에서 가져온다.
+ * 트랜잭션 속성이 정해진 뒤 커넥션을 가져와야 하므로 {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy} 로 감싸서 쓴다.
+ * <ul>
+ *     <li>같은 스레드에서 최근에 쓰기가 있었으면 {@link ReadYourWritesTracker} 에 따라 primary 로 보낸다.</li>
+ *     <li>주기적으로 replica 의 연결과 복제 지연(lagQuery)을 확인해 허용치를 넘으면 제외한다.</li>
+ *     <li>정상인 replica 가 없거나 커넥션을 얻지 못하면 primary 로 보낸다.</li>
+ * </ul>
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource implements InitializingBean, DisposableBean {
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final ReadYourWritesTracker tracker;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Duration healthCheckInterval;
+    private final Duration maxReplicaLag;
+    private final String lagQuery;
+    private ScheduledExecutorService healthChecker;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, DataSource> replicas, ReadYourWritesTracker tracker,
+                                    Duration healthCheckInterval, Duration maxReplicaLag, String lagQuery) {
+        this.primary = primary;
+        replicas.forEach((name, dataSource) -> this.replicas.add(new Replica(name, dataSource)));
+        this.tracker = tracker;
+        this.healthCheckInterval = healthCheckInterval;
+        this.maxReplicaLag = maxReplicaLag;
+        this.lagQuery = lagQuery;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        checkHealth();
+        healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = healthCheckInterval.toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = selectReplica();
+        if (replica == null) {
+            return primary.getConnection();
+        }
+        try {
+            return replica.dataSource.getConnection();
+        } catch (SQLException e) {
+            replica.markDown("connection failed: " + e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Replica replica = selectReplica();
+        if (replica == null) {
+            return primary.getConnection(username, password);
+        }
+        try {
+            return replica.dataSource.getConnection(username, password);
+        } catch (SQLException e) {
+            replica.markDown("connection failed: " + e.getMessage());
+            return primary.getConnection(username, password);
+        }
+    }
+
+    private Replica selectReplica() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || tracker.isSticky()) {
+            return null;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                if (!connection.isValid(1)) {
+                    replica.markDown("connection is not valid");
+                } else if (lagQuery == null) {
+                    replica.markUp();
+                } else {
+                    double lagSeconds = queryLag(connection);
+                    if (lagSeconds * 1000 > maxReplicaLag.toMillis()) {
+                        replica.markDown("replication lag " + lagSeconds + "s exceeds " + maxReplicaLag);
+                    } else {
+                        replica.markUp();
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.markDown("health check failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private double queryLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            return resultSet.next() ? resultSet.getDouble(1) : 0;
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) replica.dataSource).close();
+            }
+        }
+    }
+
+    private static class Replica {
+
+        private final String name;
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+
+        void markUp() {
+            if (!healthy) {
+                log.info("replica {} is back in rotation", name);
+            }
+            healthy = true;
+        }
+
+        void markDown(String reason) {
+            if (healthy) {
+                log.warn("replica {} removed from rotation: {}", name, reason);
+            }
+            healthy = false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package study.datajpa.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "datajpa.routing")
+public class ReplicaRoutingProperties {
+
+    private boolean enabled;
+
+    // 복제 지연 허용치. 쓰기 직후 이 시간 동안은 같은 요청(스레드)의 읽기도 primary 로 보낸다.
+    private Duration maxReplicaLag = Duration.ofSeconds(2);
+
+    private Duration healthCheckInterval = Duration.ofSeconds(5);
+
+    // 복제 지연을 초 단위 숫자 하나로 돌려주는 쿼리. 없으면 연결 가능 여부만 본다.
+    private String lagQuery;
+
+    private List<Replica> replicas = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Replica {
+        private String name;
+        private String url;
+        private String username;
+        private String password;
+    }
+}
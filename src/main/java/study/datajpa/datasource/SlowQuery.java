@@ -0,0 +1,31 @@
+package study.datajpa.datasource;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+
+@Getter
+@RequiredArgsConstructor
+public class SlowQuery {
+
+    private final String sql;
+    private final String binds;
+    private final Duration elapsed;
+    // update 는 변경 건수, select 는 읽은 행 수. 알 수 없으면 -1
+    private final long rows;
+    private final int batchSize;
+    // 리포지토리 밖에서 실행됐으면 null
+    private final String repositoryMethod;
+
+    // EXPLAIN 을 켰을 때 기록 스레드가 채운다.
+    private volatile String plan;
+
+    void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    boolean isSelect() {
+        return sql.regionMatches(true, 0, "select", 0, 6);
+    }
+}
@@ -0,0 +1,45 @@
+package study.datajpa.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import study.datajpa.repository.support.RepositoryInvocationContext;
+
+import javax.sql.DataSource;
+
+/**
+ * datajpa.slow-query.enabled=true 이면 JPA 가 쓰는 dataSource 빈을 {@link SlowQueryDataSource} 로 감싼다.
+ * 라우팅을 켰을 때도 dataSource 는 가장 바깥 DataSource(LazyConnectionDataSourceProxy)이므로 replica 로 간 SQL 도 기록된다.
+ */
+@Configuration
+@EnableConfigurationProperties(SlowQueryProperties.class)
+@ConditionalOnProperty(prefix = "datajpa.slow-query", name = "enabled", havingValue = "true")
+public class SlowQueryConfig {
+
+    static final String DATA_SOURCE_BEAN = "dataSource";
+
+    // DataSource 보다 먼저 만들어지는 BeanPostProcessor 이므로 나머지 빈은 감쌀 때 꺼낸다.
+    @Bean
+    public static BeanPostProcessor slowQueryDataSourcePostProcessor(ObjectProvider<SlowQueryProperties> properties,
+                                                                     ObjectProvider<MeterRegistry> meterRegistry,
+                                                                     ObjectProvider<RepositoryInvocationContext> invocationContext) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!DATA_SOURCE_BEAN.equals(beanName) || !(bean instanceof DataSource)
+                        || bean instanceof SlowQueryDataSource) {
+                    return bean;
+                }
+                DataSource target = (DataSource) bean;
+                SlowQueryProperties slowQueryProperties = properties.getObject();
+                SlowQueryLog slowQueryLog = new SlowQueryLog(slowQueryProperties.getBufferSize(),
+                        slowQueryProperties.isExplain() ? target : null, meterRegistry.getObject());
+                return new SlowQueryDataSource(target, slowQueryLog, slowQueryProperties, invocationContext.getObject());
+            }
+        };
+    }
+}
@@ -0,0 +1,247 @@
+package study.datajpa.datasource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import study.datajpa.repository.support.RepositoryInvocationContext;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * 커넥션/Statement 를 감싸 바인딩 값을 모으고 execute* 시간을 잰다. 임계치를 넘은 실행만 {@link SlowQueryLog} 로 보낸다.
+ * 빠른 실행은 바인딩 값을 배열에 담는 것 외에 하는 일이 없고, 느린 select 만 ResultSet 을 감싸 닫을 때 읽은 행 수와 함께 보낸다.
+ */
+public class SlowQueryDataSource extends DelegatingDataSource implements Closeable {
+
+    private static final ClassLoader CLASS_LOADER = SlowQueryDataSource.class.getClassLoader();
+
+    private final SlowQueryLog slowQueryLog;
+    private final BindRedactor redactor;
+    private final RepositoryInvocationContext invocationContext;
+    private final long thresholdNanos;
+
+    public SlowQueryDataSource(DataSource target, SlowQueryLog slowQueryLog, SlowQueryProperties properties,
+                               RepositoryInvocationContext invocationContext) {
+        super(target);
+        this.slowQueryLog = slowQueryLog;
+        this.redactor = new BindRedactor(properties.getRedactColumns(), properties.getMaxValueLength());
+        this.invocationContext = invocationContext;
+        this.thresholdNanos = properties.getThreshold().toNanos();
+    }
+
+    public SlowQueryLog getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(obtainTargetDataSource().getConnection()));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(obtainTargetDataSource().getConnection(username, password)));
+    }
+
+    // 감싼 빈을 대신하므로 원래 DataSource(HikariDataSource 등)의 종료도 여기서 넘겨준다.
+    @Override
+    public void close() throws IOException {
+        slowQueryLog.close();
+        if (getTargetDataSource() instanceof Closeable) {
+            ((Closeable) getTargetDataSource()).close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(CLASS_LOADER, new Class<?>[]{type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SlowQueryDataSource.invoke(target, method, args);
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return proxy(PreparedStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+                case "prepareCall":
+                    return proxy(CallableStatement.class, new StatementHandler((Statement) result, (String) args[0]));
+                case "createStatement":
+                    return proxy(Statement.class, new StatementHandler((Statement) result, null));
+                default:
+                    return result;
+            }
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+        private final String preparedSql;
+        private Object[] values = new Object[8];
+        private int valueCount;
+        private int batchSize;
+        private PendingQuery pending;
+
+        StatementHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (preparedSql != null && args != null && args.length >= 2 && name.startsWith("set")
+                    && method.getParameterTypes()[0] == int.class) {
+                bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(values, 0, valueCount, null);
+                valueCount = 0;
+            } else if (name.equals("addBatch")) {
+                batchSize++;
+            } else if (name.equals("close") && pending != null) {
+                pending.emit();
+            }
+
+            if (!name.startsWith("execute")) {
+                return SlowQueryDataSource.invoke(target, method, args);
+            }
+
+            long start = System.nanoTime();
+            Object result = SlowQueryDataSource.invoke(target, method, args);
+            long elapsed = System.nanoTime() - start;
+            int executedBatch = batchSize;
+            if (name.startsWith("executeBatch") || name.startsWith("executeLargeBatch")) {
+                batchSize = 0;
+            }
+            if (elapsed < thresholdNanos) {
+                return result;
+            }
+
+            String sql = preparedSql != null ? preparedSql : args != null && args.length > 0 ? (String) args[0] : null;
+            PendingQuery query = new PendingQuery(sql, redactor.format(sql, values, valueCount), elapsed,
+                    executedBatch, invocationContext.currentName());
+            if (result instanceof ResultSet) {
+                if (pending != null) {
+                    pending.emit();
+                }
+                pending = query;
+                return proxy(ResultSet.class, new ResultSetHandler((ResultSet) result, query));
+            }
+            query.rows = rowsOf(result);
+            query.emit();
+            return result;
+        }
+
+        private void bind(int index, Object value) {
+            if (index > values.length) {
+                values = Arrays.copyOf(values, Math.max(index, values.length * 2));
+            }
+            values[index - 1] = value;
+            valueCount = Math.max(valueCount, index);
+        }
+    }
+
+    private class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet target;
+        private final PendingQuery query;
+
+        ResultSetHandler(ResultSet target, PendingQuery query) {
+            this.target = target;
+            this.query = query;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SlowQueryDataSource.invoke(target, method, args);
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                query.rows++;
+            } else if (method.getName().equals("close")) {
+                query.emit();
+            }
+            return result;
+        }
+    }
+
+    // 느린 select 는 ResultSet(또는 Statement)을 닫을 때 행 수를 채워 한 번만 보낸다.
+    private class PendingQuery {
+
+        private final String sql;
+        private final String binds;
+        private final long elapsedNanos;
+        private final int batchSize;
+        private final String repositoryMethod;
+        private long rows;
+        private boolean emitted;
+
+        PendingQuery(String sql, String binds, long elapsedNanos, int batchSize, String repositoryMethod) {
+            this.sql = sql;
+            this.binds = binds;
+            this.elapsedNanos = elapsedNanos;
+            this.batchSize = batchSize;
+            this.repositoryMethod = repositoryMethod;
+        }
+
+        void emit() {
+            if (!emitted) {
+                emitted = true;
+                slowQueryLog.offer(new SlowQuery(sql, binds, Duration.ofNanos(elapsedNanos), rows, batchSize,
+                        repositoryMethod));
+            }
+        }
+    }
+
+    private static long rowsOf(Object result) {
+        if (result instanceof Number) {
+            return ((Number) result).longValue();
+        }
+        long rows = 0;
+        if (result instanceof int[]) {
+            for (int count : (int[]) result) {
+                if (count < 0) {
+                    return -1;
+                }
+                rows += count;
+            }
+            return rows;
+        }
+        if (result instanceof long[]) {
+            for (long count : (long[]) result) {
+                if (count < 0) {
+                    return -1;
+                }
+                rows += count;
+            }
+            return rows;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,118 @@
+package study.datajpa.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 슬로우 쿼리를 고정 크기 버퍼에 넣고 전용 스레드 하나가 꺼내 로그로 남긴다.
+ * 요청 스레드는 버퍼에 넣기만 하며, 버퍼가 차 있으면 기다리지 않고 버린다. (datajpa.slow-query.dropped)
+ * 로그는 datajpa.slow-query 로거에 WARN 으로 남는다.
+ */
+@Slf4j(topic = "datajpa.slow-query")
+public class SlowQueryLog implements AutoCloseable {
+
+    private static final int RECENT_SIZE = 100;
+
+    private final BlockingQueue<SlowQuery> buffer;
+    private final DataSource explainDataSource;
+    private final Counter recorded;
+    private final Counter dropped;
+    private final Deque<SlowQuery> recent = new ArrayDeque<>();
+    private final Thread writer;
+
+    // explainDataSource 가 null 이면 EXPLAIN 을 하지 않는다.
+    public SlowQueryLog(int bufferSize, DataSource explainDataSource, MeterRegistry meterRegistry) {
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        this.explainDataSource = explainDataSource;
+        this.recorded = meterRegistry.counter("datajpa.slow-query.recorded");
+        this.dropped = meterRegistry.counter("datajpa.slow-query.dropped");
+        this.writer = new Thread(this::drain, "slow-query-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public void offer(SlowQuery query) {
+        if (!buffer.offer(query)) {
+            dropped.increment();
+        }
+    }
+
+    // 최근에 기록을 마친 슬로우 쿼리. 오래된 것부터
+    public List<SlowQuery> recent() {
+        synchronized (recent) {
+            return new ArrayList<>(recent);
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.interrupt();
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            SlowQuery query;
+            try {
+                query = buffer.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                write(query);
+            } catch (RuntimeException e) {
+                log.warn("failed to write slow query", e);
+            }
+        }
+    }
+
+    private void write(SlowQuery query) {
+        if (explainDataSource != null && query.isSelect()) {
+            query.setPlan(explain(query.getSql()));
+        }
+        recorded.increment();
+        log.warn("slow query {}ms rows={} batch={} method={}\n  sql: {}\n  binds: {}{}",
+                query.getElapsed().toMillis(), query.getRows(), query.getBatchSize(), query.getRepositoryMethod(),
+                query.getSql(), query.getBinds(), query.getPlan() == null ? "" : "\n  plan: " + query.getPlan());
+
+        synchronized (recent) {
+            if (recent.size() == RECENT_SIZE) {
+                recent.removeFirst();
+            }
+            recent.addLast(query);
+        }
+    }
+
+    // 바인딩 값은 가려져 있으므로 파라미터는 null 로 두고 플랜만 본다.
+    private String explain(String sql) {
+        try (Connection connection = explainDataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("explain " + sql)) {
+            int parameterCount = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameterCount; i++) {
+                statement.setObject(i, null);
+            }
+            StringJoiner plan = new StringJoiner("\n");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.add(resultSet.getString(1));
+                }
+            }
+            return plan.toString();
+        } catch (SQLException e) {
+            return "explain failed: " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package study.datajpa.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "datajpa.slow-query")
+public class SlowQueryProperties {
+
+    private boolean enabled;
+
+    // 실행(execute*) 시간이 이 값 이상인 SQL 만 기록한다. 결과를 읽는 시간은 포함하지 않는다.
+    private Duration threshold = Duration.ofMillis(100);
+
+    // select 이면 기록 스레드에서 EXPLAIN 을 한 번 더 실행해 플랜을 함께 남긴다.
+    private boolean explain;
+
+    // 기록 스레드가 밀려 버퍼가 차면 새 항목은 버리고 datajpa.slow-query.dropped 만 올린다.
+    private int bufferSize = 1024;
+
+    private int maxValueLength = 100;
+
+    // 이 컬럼에 바인딩된 값은 **** 로 남긴다. (대소문자 무시)
+    private List<String> redactColumns = new ArrayList<>(List.of("password"));
+}
@@ -0,0 +1,17 @@
+package study.datajpa.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+// 회원 검색 조건. 값이 없는 조건은 쿼리에 들어가지 않는다.
+@Data
+public class MemberSearchCondition {
+
+    private String username;
+    private String usernamePrefix;
+    private Integer ageGoe;
+    private Integer ageLoe;
+    private String teamName;
+    private List<Long> teamIds;
+}
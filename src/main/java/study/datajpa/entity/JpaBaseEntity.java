@@ -1,26 +1,36 @@
 package study.datajpa.entity;
 
+import lombok.Getter;
+
 import javax.persistence.Column;
 import javax.persistence.MappedSuperclass;
-import javax.persistence.PrePersist;
-import javax.persistence.PreUpdate;
 import java.time.LocalDateTime;
 
+/**
+ * 생성/수정 시각과 작성자는 JPA 콜백 대신 AuditingEventListener 가 플러시 시점에 채운다.
+ * 트랜잭션마다 한 번 정한 시각을 재사용하므로 같은 트랜잭션에서 저장한 엔티티는 모두 같은 값을 가진다.
+ */
 @MappedSuperclass
+@Getter
 public class JpaBaseEntity {
 
     @Column(updatable = false)
     LocalDateTime createTime;
     LocalDateTime updateTime;
 
-    @PrePersist
-    public void prePersist() {
-        this.createTime = LocalDateTime.now();
-        this.updateTime = LocalDateTime.now();
+    @Column(updatable = false)
+    String createdBy;
+    String lastModifiedBy;
+
+    public void markCreated(LocalDateTime time, String auditor) {
+        this.createTime = time;
+        this.updateTime = time;
+        this.createdBy = auditor;
+        this.lastModifiedBy = auditor;
     }
 
-    @PreUpdate
-    public void preUpdate() {
-        this.updateTime = LocalDateTime.now();
+    public void markModified(LocalDateTime time, String auditor) {
+        this.updateTime = time;
+        this.lastModifiedBy = auditor;
     }
 }
@@ -1,6 +1,10 @@
 package study.datajpa.entity;
 
 import lombok.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.QueryHints;
+import study.datajpa.outbox.OutboxAggregate;
 
 import javax.persistence.*;
 
@@ -10,18 +14,34 @@ import javax.persistence.*;
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "username", "age"})
 @NamedQuery(name = "Member.findByUsername",
-        query = "select m from Member m where m.username = :username"
+        query = "select m from Member m where m.username = :username",
+        hints = @QueryHint(name = QueryHints.CACHEABLE, value = "true")
 )
 @NamedEntityGraph(name = "Member.All", attributeNodes = @NamedAttributeNode("team"))
+@Table(indexes = {
+        @Index(name = "idx_member_age_username_id", columnList = "age, username, member_id"),
+        // username 조회(findByUsername, findListByUsername, findLockByUsername, findByNames 등). IndexAdvisor 제안
+        @Index(name = "idx_member_username_age", columnList = "username, age"),
+        // 변경 피드(ChangeFeed)의 워터마크 범위 조회와 정렬
+        @Index(name = "idx_member_update_time_id", columnList = "updateTime, member_id")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "member")
+@OutboxAggregate
 public class Member extends JpaBaseEntity {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq_generator")
+    @SequenceGenerator(name = "member_seq_generator", sequenceName = "member_seq", allocationSize = 50)
     @Column(name = "member_id")
     private Long id;
     private String username;
     private int age;
 
+    // 동시 수정은 비관적 락 대신 버전으로 검출한다. (OptimisticRetryExecutor 로 재시도)
+    @Version
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "team_id")
     private Team team;
@@ -44,8 +64,8 @@ public class Member extends JpaBaseEntity {
         this.age = age;
     }
 
+    // Team.members 를 초기화하지 않는다. 이전 팀에서는 빠지고 두 팀의 memberCount 가 함께 바뀐다.
     public void changeTeam(Team team) {
-        this.team = team;
-        team.getMembers().add(this);
+        team.addMember(this);
     }
 }
@@ -1,29 +1,96 @@
 package study.datajpa.entity;
 
 import lombok.*;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.annotations.OptimisticLock;
+import study.datajpa.outbox.OutboxAggregate;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 @Entity
 @Getter
 @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString(of = {"id", "name"})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "team")
+@OutboxAggregate
 public class Team {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_seq_generator")
+    @SequenceGenerator(name = "team_seq_generator", sequenceName = "team_seq", allocationSize = 50)
     @Column(name = "team_id")
     private Long id;
     private String name;
 
+    @Version
+    private Long version;
+
+    // 팀당 멤버 수가 많을 수 있어 한 번에 초기화하는 컬렉션 수는 전역(default_batch_fetch_size)보다 작게 둔다.
+    // 멤버가 팀에 들어오고 나가는 것만으로 팀 버전이 올라가지 않도록 한다.
+    // EXTRA: size()/contains() 는 컬렉션을 초기화하지 않고 쿼리로 답한다.
+    // 루프에서 size() 는 팀마다 count 쿼리(N+1)이므로 memberCount 를 쓴다.
+    @OptimisticLock(excluded = true)
+    @BatchSize(size = 20)
+    @LazyCollection(LazyCollectionOption.EXTRA)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "team-members")
     @OneToMany(mappedBy = "team")
     private List<Member> members = new ArrayList<>();
 
+    // 팀원 수. 엔티티는 이 컬럼을 쓰지 않고 TeamMemberCounter 가 회원의 팀이 바뀔 때마다 증감 update 로 맞춘다.
+    // 저장 전의 새 팀은 null 이다. (예제 조회 probe 에서 조건으로 잡히지 않도록 0 으로 두지 않는다)
+    // 회원이 들고 날 때마다 커밋 시점에 이 팀의 2차 캐시(team, team-members)가 지워지므로,
+    // 팀원이 자주 바뀌는 팀은 team 캐시의 이득이 거의 없다.
+    @Setter(AccessLevel.NONE)
+    @ColumnDefault("0")
+    @Column(insertable = false, updatable = false, nullable = false)
+    private Integer memberCount;
+
     public Team(String name) {
         this.name = name;
     }
 
+    // members 가 초기화되어 있을 때만 컬렉션에 반영한다. 초기화 전이면 나중에 DB 에서 읽을 때 포함된다.
+    public void addMember(Member member) {
+        Team previous = member.getTeam();
+        if (previous != null && sameTeam(previous, this)) {
+            return;
+        }
+        if (previous != null) {
+            previous.removeMember(member);
+        }
+        member.setTeam(this);
+        if (Hibernate.isInitialized(members)) {
+            members.add(member);
+        }
+        memberCount = (memberCount == null ? 0 : memberCount) + 1;
+    }
+
+    public void removeMember(Member member) {
+        if (member.getTeam() == null || !sameTeam(member.getTeam(), this)) {
+            return;
+        }
+        member.setTeam(null);
+        if (Hibernate.isInitialized(members)) {
+            members.remove(member);
+        }
+        memberCount = (memberCount == null ? 0 : memberCount) - 1;
+    }
+
+    // 한쪽이 프록시일 수 있으므로 getId() 로 비교한다.
+    // (프록시에서는 private 메서드가 대상에 위임되지 않아 필드가 비어 있고, getId() 는 초기화하지 않는다)
+    private static boolean sameTeam(Team a, Team b) {
+        return a == b || (a.getId() != null && Objects.equals(a.getId(), b.getId()));
+    }
+
 }
@@ -0,0 +1,25 @@
+package study.datajpa.outbox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 받은 이벤트를 순서대로 메모리에 모은다. 테스트와 로컬 확인용.
+ */
+public class InMemoryOutboxSink implements OutboxSink {
+
+    private final List<OutboxEvent> published = new ArrayList<>();
+
+    @Override
+    public synchronized void publish(OutboxEvent event) {
+        published.add(event);
+    }
+
+    public synchronized List<OutboxEvent> getPublished() {
+        return new ArrayList<>(published);
+    }
+
+    public synchronized void clear() {
+        published.clear();
+    }
+}
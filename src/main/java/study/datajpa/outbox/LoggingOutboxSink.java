@@ -0,0 +1,17 @@
+package study.datajpa.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 이벤트 한 건을 datajpa.outbox 로거에 한 줄로 남긴다. (로그 파일 설정으로 파일 싱크가 된다)
+ * 기본으로 등록되지 않는다. 로그를 싱크로 쓸 때만 빈으로 등록한다.
+ */
+@Slf4j(topic = "datajpa.outbox")
+public class LoggingOutboxSink implements OutboxSink {
+
+    @Override
+    public void publish(OutboxEvent event) {
+        log.info("{} {} {} v{} {}", event.getId(), event.getEventType(), event.partitionKey(),
+                event.getAggregateVersion(), event.getPayload());
+    }
+}
@@ -0,0 +1,16 @@
+package study.datajpa.outbox;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 이 엔티티의 추가/수정/삭제와 벌크 수정을 같은 트랜잭션에서 아웃박스(outbox_event)에 남긴다.
+ */
+@Documented
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OutboxAggregate {
+}
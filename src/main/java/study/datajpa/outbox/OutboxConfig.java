@@ -0,0 +1,34 @@
+package study.datajpa.outbox;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * 아웃박스. 이벤트는 {@link OutboxWriter} 가 쓰고, datajpa.outbox.relay.enabled=true 이면 {@link OutboxRelay} 가 싱크로 보낸다.
+ * 릴레이는 보낸 이벤트를 지우므로 기본은 꺼져 있고, 켜려면 OutboxSink 빈을 등록해야 한다.
+ * 로그로 충분하면 {@link LoggingOutboxSink} 를 빈으로 등록한다.
+ */
+@Configuration
+@EnableConfigurationProperties(OutboxProperties.class)
+public class OutboxConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "datajpa.outbox.relay", name = "enabled", havingValue = "true")
+    public OutboxRelay outboxRelay(EntityManagerFactory emf, PlatformTransactionManager transactionManager,
+                                   ObjectProvider<OutboxSink> outboxSink, OutboxProperties properties,
+                                   MeterRegistry meterRegistry) {
+        OutboxSink sink = outboxSink.getIfUnique();
+        if (sink == null) {
+            throw new IllegalStateException("datajpa.outbox.relay.enabled=true needs exactly one OutboxSink bean;"
+                    + " the relay deletes events after publishing them");
+        }
+        return new OutboxRelay(emf, transactionManager, sink, properties.getRelay(), meterRegistry);
+    }
+}
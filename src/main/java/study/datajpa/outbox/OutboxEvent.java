@@ -0,0 +1,55 @@
+package study.datajpa.outbox;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString(of = {"id", "aggregateType", "aggregateId", "aggregateVersion", "eventType"})
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq_generator")
+    @SequenceGenerator(name = "outbox_event_seq_generator", sequenceName = "outbox_event_seq", allocationSize = 50)
+    @Column(name = "outbox_event_id")
+    private Long id;
+
+    @Column(nullable = false, length = 100)
+    private String aggregateType;
+    @Column(length = 100)
+    private String aggregateId;
+    private Long aggregateVersion;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private OutboxEventType eventType;
+
+    // 추가는 전체 상태, 수정은 바뀐 속성만 담은 JSON
+    @Column(length = 4000)
+    private String payload;
+
+    // 쓴 트랜잭션의 감사 시각
+    @Column(nullable = false)
+    private LocalDateTime occurredAt;
+
+    public OutboxEvent(String aggregateType, String aggregateId, Long aggregateVersion,
+                       OutboxEventType eventType, String payload, LocalDateTime occurredAt) {
+        this.aggregateType = aggregateType;
+        this.aggregateId = aggregateId;
+        this.aggregateVersion = aggregateVersion;
+        this.eventType = eventType;
+        this.payload = payload;
+        this.occurredAt = occurredAt;
+    }
+
+    // 키가 같은 이벤트는 릴레이가 id 순서대로 전달한다. 벌크 수정은 엔티티 타입별로 한 줄이다.
+    public String partitionKey() {
+        return aggregateType + ":" + aggregateId;
+    }
+}
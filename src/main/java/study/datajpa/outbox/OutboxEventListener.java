@@ -0,0 +1,89 @@
+package study.datajpa.outbox;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+import study.datajpa.repository.support.HibernateIntegrators;
+
+import java.util.Map;
+
+/**
+ * flush 중 실행된 insert/update/delete 를 {@link OutboxWriter} 에 넘긴다.
+ */
+@Component
+public class OutboxEventListener implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        HibernatePropertiesCustomizer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final OutboxWriter outboxWriter;
+
+    public OutboxEventListener(OutboxWriter outboxWriter) {
+        this.outboxWriter = outboxWriter;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        HibernateIntegrators.append(hibernateProperties, new OutboxIntegrator());
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        outboxWriter.entityChanged(event.getSession(), OutboxEventType.CREATED, event.getPersister(),
+                event.getId(), event.getEntity(), event.getState(), null);
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        outboxWriter.entityChanged(event.getSession(), OutboxEventType.UPDATED, event.getPersister(),
+                event.getId(), event.getEntity(), event.getState(), event.getDirtyProperties());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        outboxWriter.entityChanged(event.getSession(), OutboxEventType.DELETED, event.getPersister(),
+                event.getId(), event.getEntity(), null, null);
+    }
+
+    // 커밋 뒤가 아니라 flush 시점에 받아야 같은 트랜잭션에서 쓸 수 있다.
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    // Hibernate 5.4 에서는 아직 추상 메서드라 구현해야 한다.
+    @Deprecated
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    private class OutboxIntegrator implements Integrator {
+
+        @Override
+        public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                              SessionFactoryServiceRegistry serviceRegistry) {
+            EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+            registry.appendListeners(EventType.POST_INSERT, OutboxEventListener.this);
+            registry.appendListeners(EventType.POST_UPDATE, OutboxEventListener.this);
+            registry.appendListeners(EventType.POST_DELETE, OutboxEventListener.this);
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory,
+                                 SessionFactoryServiceRegistry serviceRegistry) {
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package study.datajpa.outbox;
+
+public enum OutboxEventType {
+    CREATED,
+    UPDATED,
+    DELETED,
+    // JPQL 벌크 수정. 바뀐 행 대신 수정 문장과 파라미터를 남기고 aggregateId 는 비어 있다.
+    BULK_UPDATED
+}
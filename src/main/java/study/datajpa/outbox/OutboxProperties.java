@@ -0,0 +1,34 @@
+package study.datajpa.outbox;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "datajpa.outbox")
+public class OutboxProperties {
+
+    // false 면 이벤트를 쓰지 않는다.
+    private boolean enabled = true;
+
+    private Relay relay = new Relay();
+
+    @Getter
+    @Setter
+    public static class Relay {
+
+        // 보낸 이벤트는 지워지므로 OutboxSink 빈을 등록한 뒤에 켠다.
+        private boolean enabled = false;
+
+        // 아웃박스가 비었거나 전달이 실패한 뒤 다음 폴링까지 쉬는 시간
+        private Duration pollInterval = Duration.ofSeconds(1);
+
+        private int batchSize = 100;
+
+        // 동시에 전달하는 레인 수. 집합체마다 레인이 고정되어 같은 집합체의 이벤트는 한 레인에서 순서대로 나간다.
+        private int parallelism = 4;
+    }
+}
@@ -0,0 +1,222 @@
+package study.datajpa.outbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * outbox_event 를 id 순으로 batch-size 건씩 끝까지 읽어 {@link OutboxSink} 로 보내고, 보낸 이벤트를 지운다.
+ * <ul>
+ *     <li>보낸 뒤에 지우므로 중간에 죽으면 다시 보낸다. (at-least-once)</li>
+ *     <li>이벤트는 partitionKey 로 레인(parallelism 개)에 나뉘고 레인 안에서는 id 순서대로 보낸다.
+ *     한 집합체의 전달이 실패하면 그 drain 에서 같은 집합체의 뒤 이벤트는 건너뛰고 다음 폴링에서 실패한 이벤트부터 다시 보낸다.
+ *     다음 배치는 직전 배치의 마지막 id 뒤부터 읽으므로, 실패한 집합체의 이벤트가 배치를 채워도 다른 집합체는 계속 나간다.</li>
+ *     <li>벌크 수정 이벤트(BULK_UPDATED)는 여러 집합체에 걸치므로 장벽으로 보낸다. 앞의 이벤트를 모든 레인에서 다 보낸 뒤 혼자 보내고,
+ *     뒤의 이벤트는 그다음에 보낸다. 앞에서 실패한 집합체가 있으면 순서를 지킬 수 없으므로 그 drain 은 장벽에서 멈춘다.</li>
+ *     <li>id 는 이 애플리케이션의 시퀀스 할당 순서다. 같은 행을 바꾸는 트랜잭션은 행 락으로 차례로 커밋하므로 인스턴스 하나에서는 id 순서가 커밋 순서와 같다.
+ *     여러 인스턴스가 쓰면 받는 쪽에서 aggregateVersion 으로 순서를 확인한다.</li>
+ * </ul>
+ * 조회와 삭제는 짧은 트랜잭션으로 따로 하고, 싱크로 보내는 동안에는 커넥션을 잡지 않는다.
+ */
+@Slf4j
+public class OutboxRelay implements SmartLifecycle, DisposableBean {
+
+    private final EntityManager em;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final OutboxSink sink;
+    private final OutboxProperties.Relay properties;
+    private final Counter published;
+    private final Counter failed;
+    private final ExecutorService lanes;
+
+    private volatile ScheduledExecutorService poller;
+
+    public OutboxRelay(EntityManagerFactory emf, PlatformTransactionManager transactionManager, OutboxSink sink,
+                       OutboxProperties.Relay properties, MeterRegistry meterRegistry) {
+        this.em = SharedEntityManagerCreator.createSharedEntityManager(emf);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.sink = sink;
+        this.properties = properties;
+        this.published = meterRegistry.counter("datajpa.outbox.published");
+        this.failed = meterRegistry.counter("datajpa.outbox.failed");
+
+        AtomicInteger laneNumber = new AtomicInteger();
+        this.lanes = Executors.newFixedThreadPool(properties.getParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay-lane-" + laneNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void start() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = properties.getPollInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::pollSafely, interval, interval, TimeUnit.MILLISECONDS);
+        poller = scheduler;
+    }
+
+    @Override
+    public void stop() {
+        ScheduledExecutorService scheduler = poller;
+        poller = null;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(properties.getPollInterval().toMillis() * 2, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return poller != null;
+    }
+
+    @Override
+    public void destroy() {
+        stop();
+        lanes.shutdownNow();
+    }
+
+    private void pollSafely() {
+        try {
+            drain();
+        } catch (RuntimeException e) {
+            log.warn("outbox relay poll failed", e);
+        }
+    }
+
+    /**
+     * 아웃박스를 끝까지 배치 단위로 보내고 보낸 이벤트를 지운다. 보낸 건수를 돌려준다.
+     */
+    public synchronized int drain() {
+        // 이번 drain 에서 전달이 실패한 집합체. 레인 스레드들이 같이 쓴다.
+        Set<String> blocked = ConcurrentHashMap.newKeySet();
+        int delivered = 0;
+        long after = Long.MIN_VALUE;
+        while (true) {
+            long from = after;
+            List<OutboxEvent> batch = readTransaction.execute(status ->
+                    em.createQuery("select e from OutboxEvent e where e.id > :after order by e.id", OutboxEvent.class)
+                            .setParameter("after", from)
+                            .setMaxResults(properties.getBatchSize())
+                            .getResultList());
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            List<Long> ids = new ArrayList<>();
+            boolean passed = deliver(batch, blocked, ids);
+            if (!ids.isEmpty()) {
+                writeTransaction.executeWithoutResult(status ->
+                        em.createQuery("delete from OutboxEvent e where e.id in :ids")
+                                .setParameter("ids", ids)
+                                .executeUpdate());
+                published.increment(ids.size());
+                delivered += ids.size();
+            }
+            if (!passed || batch.size() < properties.getBatchSize()) {
+                break;
+            }
+            after = batch.get(batch.size() - 1).getId();
+        }
+        return delivered;
+    }
+
+    // 장벽 사이의 이벤트는 레인으로 나눠 동시에 보내고, 장벽은 앞의 레인이 모두 끝난 뒤 보낸다. 장벽에서 멈췄으면 false
+    private boolean deliver(List<OutboxEvent> batch, Set<String> blocked, List<Long> delivered) {
+        List<OutboxEvent> segment = new ArrayList<>();
+        for (OutboxEvent event : batch) {
+            if (event.getEventType() != OutboxEventType.BULK_UPDATED) {
+                segment.add(event);
+                continue;
+            }
+            delivered.addAll(deliverInLanes(segment, blocked));
+            segment.clear();
+            if (!blocked.isEmpty() || !publish(event)) {
+                return false;
+            }
+            delivered.add(event.getId());
+        }
+        delivered.addAll(deliverInLanes(segment, blocked));
+        return true;
+    }
+
+    private List<Long> deliverInLanes(List<OutboxEvent> events, Set<String> blocked) {
+        if (events.isEmpty()) {
+            return List.of();
+        }
+        List<List<OutboxEvent>> laneEvents = new ArrayList<>();
+        for (int i = 0; i < properties.getParallelism(); i++) {
+            laneEvents.add(new ArrayList<>());
+        }
+        for (OutboxEvent event : events) {
+            laneEvents.get(Math.floorMod(event.partitionKey().hashCode(), properties.getParallelism())).add(event);
+        }
+        List<CompletableFuture<List<Long>>> futures = new ArrayList<>();
+        for (List<OutboxEvent> lane : laneEvents) {
+            if (!lane.isEmpty()) {
+                futures.add(CompletableFuture.supplyAsync(() -> deliverLane(lane, blocked), lanes));
+            }
+        }
+        List<Long> delivered = new ArrayList<>();
+        for (CompletableFuture<List<Long>> future : futures) {
+            delivered.addAll(future.join());
+        }
+        return delivered;
+    }
+
+    private List<Long> deliverLane(List<OutboxEvent> events, Set<String> blocked) {
+        List<Long> delivered = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            if (blocked.contains(event.partitionKey())) {
+                continue;
+            }
+            if (publish(event)) {
+                delivered.add(event.getId());
+            } else {
+                blocked.add(event.partitionKey());
+            }
+        }
+        return delivered;
+    }
+
+    private boolean publish(OutboxEvent event) {
+        try {
+            sink.publish(event);
+            return true;
+        } catch (Exception e) {
+            failed.increment();
+            log.warn("outbox event {} for {} not delivered, retrying on next poll", event.getId(), event.partitionKey(), e);
+            return false;
+        }
+    }
+}
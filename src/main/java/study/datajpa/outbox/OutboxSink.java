@@ -0,0 +1,10 @@
+package study.datajpa.outbox;
+
+/**
+ * 릴레이가 아웃박스 이벤트를 내보내는 곳. 예외를 던지면 그 집합체의 이후 이벤트는 다음 폴링에서 다시 시도한다.
+ * 같은 이벤트가 두 번 이상 올 수 있으므로(at-least-once) 받는 쪽은 id 나 aggregateVersion 으로 중복을 거른다.
+ */
+public interface OutboxSink {
+
+    void publish(OutboxEvent event) throws Exception;
+}
@@ -0,0 +1,190 @@
+package study.datajpa.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.internal.ForeignKeys;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.type.EntityType;
+import org.hibernate.type.Type;
+import org.springframework.stereotype.Component;
+import study.datajpa.audit.AuditContext;
+
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link OutboxAggregate} 엔티티의 변경을 세션별로 모았다가 커밋 직전(마지막 flush 뒤)에 outbox_event 로 한 번에 insert 한다.
+ * 같은 트랜잭션에서 쓰므로 롤백되면 이벤트도 남지 않는다.
+ * <ul>
+ *     <li>추가/수정/삭제는 {@link OutboxEventListener} 가, upsert 와 벌크 수정은 해당 코드가 직접 부른다.</li>
+ *     <li>페이로드는 기본 속성과 연관 엔티티 id(teamId 등)만 담는다. 컬렉션과 버전은 빼고, 버전은 aggregateVersion 에 둔다.</li>
+ *     <li>insert 는 OutboxEvent persister 로 하므로 JDBC 배치와 StatementListener 를 그대로 거친다.</li>
+ * </ul>
+ */
+@Component
+public class OutboxWriter {
+
+    private final OutboxProperties properties;
+    private final AuditContext auditContext;
+    private final ObjectMapper objectMapper;
+    private final Map<String, AggregatePlan> plans = new ConcurrentHashMap<>();
+    private final Map<SessionImplementor, List<OutboxEvent>> pending = new ConcurrentHashMap<>();
+
+    public OutboxWriter(OutboxProperties properties, AuditContext auditContext, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.auditContext = auditContext;
+        this.objectMapper = objectMapper;
+    }
+
+    public boolean isAggregate(EntityPersister persister) {
+        return properties.isEnabled() && plan(persister).aggregate;
+    }
+
+    /**
+     * state 중 properties 에 해당하는 속성만 페이로드에 담는다. properties 가 null 이면 전체, state 가 null 이면 페이로드 없음.
+     */
+    public void entityChanged(SessionImplementor session, OutboxEventType type, EntityPersister persister,
+                              Object id, Object entity, Object[] state, int[] properties) {
+        if (!isAggregate(persister)) {
+            return;
+        }
+        AggregatePlan plan = plan(persister);
+        Object version = persister.isVersioned() ? persister.getVersion(entity) : null;
+        String payload = state == null ? null : json(plan.payload(session, state, properties));
+        add(session, new OutboxEvent(persister.getEntityName(), String.valueOf(id),
+                version instanceof Number ? ((Number) version).longValue() : null, type, payload, now()));
+    }
+
+    /**
+     * JPQL 벌크 수정. 페이로드는 어디서 부르든 같은 모양이다.
+     * <pre>
+     * {"set": "e.age = e.age + 1", "where": "e.age = :age", "idFrom": 1, "idTo": 100, "parameters": {"age": 10}}
+     * </pre>
+     * set/where 는 엔티티 별칭 e 로 쓴 JPQL 조각이고, 바뀐 행은 where 와 id 범위(idFrom ~ idTo)를 모두 만족하는 행이다.
+     * 범위가 없는 쪽은 null 이다. 받는 쪽은 이것과 occurredAt 으로 바뀐 행을 알 수 있다. (ChangeFeed 로 occurredAt 이후를 읽는 등)
+     */
+    public void bulkUpdated(EntityManager em, Class<?> entityType, String set, String where,
+                            Long idFrom, Long idTo, Map<String, ?> parameters) {
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(entityType);
+        if (!isAggregate(persister)) {
+            return;
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("set", set);
+        payload.put("where", where);
+        payload.put("idFrom", idFrom);
+        payload.put("idTo", idTo);
+        payload.put("parameters", parameters);
+        add(session, new OutboxEvent(persister.getEntityName(), null, null, OutboxEventType.BULK_UPDATED, json(payload), now()));
+    }
+
+    private LocalDateTime now() {
+        return auditContext.current().getTime();
+    }
+
+    private void add(SessionImplementor session, OutboxEvent event) {
+        pending.computeIfAbsent(session, key -> {
+            // 롤백이면 before 는 불리지 않으므로 모은 이벤트는 after 에서 버린다.
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) this::insertPending);
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, s) -> pending.remove(session));
+            // 트랜잭션을 끝내지 않고 세션을 닫으면 위 콜백이 불리지 않으므로 세션과 함께 버린다.
+            session.getEventListenerManager().addListener(new BaseSessionEventListener() {
+                @Override
+                public void end() {
+                    pending.remove(session);
+                }
+            });
+            return new ArrayList<>();
+        }).add(event);
+    }
+
+    // 커밋/롤백을 기다리는 세션 수
+    int pendingSessions() {
+        return pending.size();
+    }
+
+    private void insertPending(SessionImplementor session) {
+        List<OutboxEvent> events = pending.remove(session);
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        EntityPersister persister = session.getFactory().getMetamodel().entityPersister(OutboxEvent.class);
+        for (OutboxEvent event : events) {
+            Serializable id = persister.getIdentifierGenerator().generate(session, event);
+            persister.setIdentifier(event, id, session);
+            persister.insert(id, persister.getPropertyValuesToInsert(event, null, session), event, session);
+        }
+        session.getJdbcCoordinator().executeBatch();
+    }
+
+    private String json(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("could not write outbox payload", e);
+        }
+    }
+
+    private AggregatePlan plan(EntityPersister persister) {
+        return plans.computeIfAbsent(persister.getEntityName(), name -> new AggregatePlan(persister));
+    }
+
+    private static class AggregatePlan {
+
+        final boolean aggregate;
+        final String[] names;
+        final Type[] types;
+        final boolean[] included;
+
+        AggregatePlan(EntityPersister persister) {
+            Class<?> mappedClass = persister.getMappedClass();
+            this.aggregate = mappedClass != null && mappedClass.isAnnotationPresent(OutboxAggregate.class);
+            this.types = persister.getPropertyTypes();
+            this.names = new String[types.length];
+            this.included = new boolean[types.length];
+            int versionIndex = persister.isVersioned() ? persister.getVersionProperty() : -1;
+            for (int i = 0; i < types.length; i++) {
+                String name = persister.getPropertyNames()[i];
+                included[i] = i != versionIndex && !types[i].isCollectionType();
+                names[i] = types[i].isEntityType() ? name + "Id" : name;
+            }
+        }
+
+        Map<String, Object> payload(SessionImplementor session, Object[] state, int[] properties) {
+            Map<String, Object> payload = new LinkedHashMap<>();
+            if (properties == null) {
+                for (int i = 0; i < state.length; i++) {
+                    put(payload, session, state, i);
+                }
+            } else {
+                for (int i : properties) {
+                    put(payload, session, state, i);
+                }
+            }
+            return payload;
+        }
+
+        private void put(Map<String, Object> payload, SessionImplementor session, Object[] state, int i) {
+            if (!included[i]) {
+                return;
+            }
+            Object value = state[i];
+            if (value != null && types[i].isEntityType()) {
+                value = ForeignKeys.getEntityIdentifierIfNotUnsaved(
+                        ((EntityType) types[i]).getAssociatedEntityName(), value, session);
+            }
+            payload.put(names[i], value);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package study.datajpa.repository;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.datasource.AdaptivePoolSizer;
+import study.datajpa.datasource.ReadYourWritesTracker;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+
+/**
+ * MemberRepository / TeamRepository 조회를 전용 스레드 풀에서 실행하고 CompletableFuture 로 돌려준다.
+ * 한 요청에서 서로 독립적인 조회(회원 + 팀 수 등)를 동시에 보낼 때 쓴다.
+ * 줄어드는 것은 DB 왕복 시간의 합(→ 가장 긴 왕복)이다. 왕복이 거의 없는 인메모리 DB 나 커넥션 풀이 이미 다 찬 상황에서는 빨라지지 않는다.
+ * (AsyncFanOutBenchmark 의 roundTripMillis 참고)
+ * <p>
+ * 풀 크기는 커넥션 풀 크기에 맞춘다. 대기열까지 차면 호출한 스레드가 직접 실행하므로(CallerRunsPolicy)
+ * 커넥션 풀보다 많은 조회가 한꺼번에 몰리지 않고, 호출하는 쪽의 처리 속도가 자연스럽게 늦춰진다.
+ * datajpa.async.pool-size 를 정하지 않으면 {@link AdaptivePoolSizer} 가 커넥션 풀을 늘리고 줄일 때 같이 따라간다.
+ * <p>
+ * 조회마다 트랜잭션이 따로 열리므로 결과 엔티티는 준영속 상태다. 지연 로딩이 필요하면 {@link #query} 안에서 접근한다.
+ */
+@Component
+public class AsyncRepositoryFacade implements DisposableBean {
+
+    private final MemberRepository memberRepository;
+    private final TeamRepository teamRepository;
+    private final TransactionTemplate readOnlyTx;
+    private final ThreadPoolTaskExecutor executor;
+
+    public AsyncRepositoryFacade(MemberRepository memberRepository,
+                                 TeamRepository teamRepository,
+                                 PlatformTransactionManager transactionManager,
+                                 ObjectProvider<ReadYourWritesTracker> readYourWritesTracker,
+                                 ObjectProvider<AdaptivePoolSizer> adaptivePoolSizer,
+                                 @Value("${datajpa.async.pool-size:0}") int poolSize,
+                                 @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connectionPoolSize,
+                                 @Value("${datajpa.async.queue-capacity:100}") int queueCapacity) {
+        this.memberRepository = memberRepository;
+        this.teamRepository = teamRepository;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(poolSize > 0 ? poolSize : connectionPoolSize);
+        this.executor.setMaxPoolSize(poolSize > 0 ? poolSize : connectionPoolSize);
+        this.executor.setQueueCapacity(queueCapacity);
+        this.executor.setThreadNamePrefix("repository-async-");
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        // replica 라우팅을 쓰면 요청 스레드의 쓰기 기록을 넘겨서 방금 쓴 데이터를 replica 에서 읽지 않도록 한다.
+        readYourWritesTracker.ifAvailable(tracker -> this.executor.setTaskDecorator(tracker::propagate));
+        this.executor.initialize();
+        if (poolSize <= 0) {
+            adaptivePoolSizer.ifAvailable(sizer -> sizer.addResizeListener(this::resize));
+        }
+    }
+
+    public CompletableFuture<Optional<Member>> findMemberById(Long id) {
+        return supply(() -> memberRepository.findById(id));
+    }
+
+    public CompletableFuture<List<Member>> findMembersByUsername(String username) {
+        return supply(() -> memberRepository.findByUsername(username));
+    }
+
+    public CompletableFuture<Long> countMembers() {
+        return supply(memberRepository::count);
+    }
+
+    public CompletableFuture<Optional<Team>> findTeamById(Long id) {
+        return supply(() -> teamRepository.findById(id));
+    }
+
+    public CompletableFuture<Long> countTeams() {
+        return supply(teamRepository::count);
+    }
+
+    // 여러 조회를 하나의 읽기 전용 트랜잭션으로 묶어 실행한다. 지연 로딩도 이 안에서는 가능하다.
+    public <T> CompletableFuture<T> query(Supplier<T> query) {
+        return supply(() -> readOnlyTx.execute(status -> query.get()));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, executor);
+    }
+
+    // 늘릴 때는 max 부터, 줄일 때는 core 부터 바꿔야 core 가 max 보다 커지지 않는다.
+    private synchronized void resize(int size) {
+        if (size > executor.getMaxPoolSize()) {
+            executor.setMaxPoolSize(size);
+            executor.setCorePoolSize(size);
+        } else {
+            executor.setCorePoolSize(size);
+            executor.setMaxPoolSize(size);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
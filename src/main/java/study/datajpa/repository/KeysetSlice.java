@@ -0,0 +1,23 @@
+package study.datajpa.repository;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@ToString
+public class KeysetSlice<T> {
+
+    private final List<T> content;
+    private final String nextCursor;
+
+    public KeysetSlice(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,49 @@
+package study.datajpa.repository;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import study.datajpa.entity.Member;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 키셋 페이징의 위치 - 정렬 기준인 (username desc nulls last, id desc) 의 마지막 값.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class MemberCursor {
+
+    private final String username;
+    private final Long id;
+
+    public MemberCursor(String username, Long id) {
+        this.username = username;
+        this.id = id;
+    }
+
+    public static MemberCursor of(Member member) {
+        return new MemberCursor(member.getUsername(), member.getId());
+    }
+
+    // username 이 null 이면 구분자 없이 id 만 담는다. ("null" 이라는 이름과 구분하기 위해)
+    public String encode() {
+        String raw = username == null ? String.valueOf(id) : id + ":" + username;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MemberCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            if (separator < 0) {
+                return new MemberCursor(null, Long.valueOf(raw));
+            }
+            return new MemberCursor(raw.substring(separator + 1), Long.valueOf(raw.substring(0, separator)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor token: " + token, e);
+        }
+    }
+}
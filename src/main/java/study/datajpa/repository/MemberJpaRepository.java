@@ -1,8 +1,18 @@
 package study.datajpa.repository;
 
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.servlet.mvc.Controller;
 import study.datajpa.entity.Member;
+import study.datajpa.repository.support.BulkUpdateOptions;
+import study.datajpa.repository.support.BulkUpdateProgress;
+import study.datajpa.repository.support.BulkUpdateSpec;
+import study.datajpa.repository.support.ChunkedBulkUpdater;
+import study.datajpa.repository.support.CountMode;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
@@ -10,16 +20,29 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
 public class MemberJpaRepository {
 
     @PersistenceContext
     private EntityManager em;
 
+    private final ChunkedBulkUpdater chunkedBulkUpdater;
+    private final MemberRepositorySupport memberRepositorySupport;
+
+    @Transactional
     public Member save(Member member) {
         em.persist(member);
         return member;
     }
 
+    // 대량 저장 - batchSize 단위로 JDBC 배치 insert 후 flush 하고 저장한 회원만 분리한다.
+    @Transactional
+    public int saveAllBatched(Iterable<Member> members, int batchSize) {
+        return memberRepositorySupport.saveAllBatched(members, batchSize);
+    }
+
+    @Transactional
     public void delete(Member member) {
         em.remove(member);
     }
@@ -72,21 +95,31 @@ public class MemberJpaRepository {
         return memberList;
     }
 
-    public Long totalCount(int age) {
-            return em.createQuery("select count(m) from Member m where m.age = :age", Long.class)
-                .setParameter("age",age)
-                .getSingleResult();
-
+    public Page<Member> findPageByAge(int age, Pageable pageable, CountMode countMode) {
+        return memberRepositorySupport.findPageByAge(age, pageable, countMode);
     }
 
-    public int bulkAgePlus(int age) {
-        int resultCount = em.createQuery("update Member m set m.age = m.age+1" +
-                        "where m.age =:age")
-                .setParameter("age", age)
-                .executeUpdate();
+    // 키셋 페이징 - 직전 페이지 마지막 (username, id) 이후부터 limit 건. (MemberRepositorySupport)
+    public KeysetSlice<Member> findByPageAfter(int age, MemberCursor cursor, int limit) {
+        return memberRepositorySupport.findKeysetByAge(age, cursor, limit);
+    }
 
-        return resultCount;
+    public Long totalCount(int age) {
+        return memberRepositorySupport.countByAge(age);
     }
 
+    @Transactional
+    public int bulkAgePlus(int age) {
+        return memberRepositorySupport.bulkAgePlus(age);
+    }
 
+    // 대상이 많을 때는 id 구간으로 나눠 구간마다 커밋한다. 호출한 쪽의 트랜잭션에는 참여하지 않는다.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BulkUpdateProgress bulkAgePlus(int age, BulkUpdateOptions options) {
+        return chunkedBulkUpdater.execute(
+                BulkUpdateSpec.update(Member.class, "e.age = e.age + 1")
+                        .where("e.age = :age")
+                        .param("age", age),
+                options);
+    }
 }
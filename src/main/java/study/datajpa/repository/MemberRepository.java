@@ -1,11 +1,12 @@
 package study.datajpa.repository;
 
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import study.datajpa.dto.MemberDto;
-import study.datajpa.dto.UsernameDto;
 import study.datajpa.entity.Member;
 
 import javax.persistence.LockModeType;
@@ -13,6 +14,9 @@ import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
 
+// 조회 메서드는 읽기 전용 트랜잭션으로 실행한다. (스냅샷 없음, FlushMode MANUAL, 읽기 전용 커넥션)
+// 이미 진행 중인 트랜잭션이 있으면 그 트랜잭션의 설정을 따르므로, 대량 조회는 호출하는 쪽도 readOnly 로 묶는다.
+@Transactional(readOnly = true)
 public interface MemberRepository extends JpaRepository<Member, Long>, MemberRepositoryCustom, JpaSpecificationExecutor<Member> {
 
     List<Member> findByUsernameAndAgeGreaterThan(String username, int age);
@@ -49,14 +53,14 @@ public interface MemberRepository extends JpaRepository<Member, Long>, MemberRep
 //    @Query(value = "select m from Member m left join m.team t"
 //    ,  countQuery = "select count(m) from Member m")
 
-    @Modifying(clearAutomatically = true)
-    @Query("update Member m set m.age = m.age + 1 where m.age =:age")
-    int bulkAgePlus(@Param("age") int age);
-
 
     @Query("select m from Member m left join fetch m.team")
     List<Member> findMembersByFetch();
 
+    // 페이징은 fetch join 대신 batch fetch(default_batch_fetch_size)로 team 을 IN 쿼리로 가져온다.
+    @Query(value = "select m from Member m", countQuery = "select count(m) from Member m")
+    Page<Member> findMemberPage(Pageable pageable);
+
     @Override
     @EntityGraph(attributePaths = "team")
     List<Member> findAll();
@@ -73,10 +77,10 @@ public interface MemberRepository extends JpaRepository<Member, Long>, MemberRep
     @QueryHints(value = @QueryHint(name = "org.hibernate.readOnly", value = "true"))
     Member findReadOnlyByUsername(String username);
 
+    @Transactional
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     List<Member> findLockByUsername(String username);
 
-    List<UsernameOnly> findProjectionsByUsername(@Param("username") String username);
-
-    List<UsernameDto> findClassProjectionByUsername(@Param("username") String username);
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<Member> findLockById(Long id);
 }
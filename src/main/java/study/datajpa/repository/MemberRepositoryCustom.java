@@ -1,10 +1,67 @@
 package study.datajpa.repository;
 
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import study.datajpa.dto.MemberSearchCondition;
+import study.datajpa.dto.UsernameDto;
 import study.datajpa.entity.Member;
+import study.datajpa.repository.support.BulkUpdateOptions;
+import study.datajpa.repository.support.BulkUpdateProgress;
+import study.datajpa.repository.support.ChangeSlice;
+import study.datajpa.repository.support.ChangeWatermark;
+import study.datajpa.repository.support.CountMode;
+import study.datajpa.repository.support.UpsertResult;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public interface MemberRepositoryCustom {
 
     List<Member> findMemberCustom();
+
+    // batchSize 마다 flush 하고 저장한 회원을 분리한다. 반환 후 members 는 준영속이고, 호출한 쪽의 다른 엔티티는 영속 상태로 남는다.
+    int saveAllBatched(Iterable<Member> members, int batchSize);
+
+    // 트랜잭션 안에서 사용하고, 다 쓴 스트림은 반드시 close 해야 커서가 반환된다.
+    Stream<Member> streamAll(int fetchSize);
+
+    void forEachMember(int fetchSize, Consumer<Member> action);
+
+    Page<Member> findPageByAge(int age, Pageable pageable, CountMode countMode);
+
+    // cursor 가 null 이면 첫 페이지
+    KeysetSlice<Member> findKeysetByAge(int age, String cursor, int size);
+
+    // id 목록을 IN 쿼리 몇 번으로 나눠 조회. 입력 순서대로, 없는 id 는 빠진다.
+    List<Member> findAllByIdsBatched(Collection<Long> ids);
+
+    // 프로젝션 타입(인터페이스/클래스)의 프로퍼티에 해당하는 컬럼만 select 한다. getTeamName() 같은 중첩 경로는 left join 으로 가져온다.
+    <T> List<T> findColumnsByUsername(String username, Class<T> type);
+
+    // findColumnsByUsername 으로 실행한다. (엔티티를 만들지 않는다)
+    List<UsernameOnly> findProjectionsByUsername(String username);
+
+    List<UsernameDto> findClassProjectionByUsername(String username);
+
+    // 조건 조합(모양)별로 만든 JPQL 을 재사용한다.
+    Page<Member> search(MemberSearchCondition condition, Pageable pageable);
+
+    // findAll(Example) 과 같은 규칙이지만 Criteria 대신 모양별로 캐시한 JPQL 로 실행한다.
+    List<Member> findAllByExampleCached(Example<Member> example);
+
+    // age 인 회원의 나이를 한 살 올린다. 버전과 감사 컬럼을 함께 바꾸고 아웃박스에 남긴 뒤 영속성 컨텍스트를 비운다.
+    int bulkAgePlus(int age);
+
+    // bulkAgePlus(age) 를 id 구간별 트랜잭션으로 나눠 실행
+    BulkUpdateProgress bulkAgePlus(int age, BulkUpdateOptions options);
+
+    // id 가 정해진 회원을 조회/merge 없이 upsert 배치로 저장한다. (동기화 작업용)
+    // @Version 검사 없이 덮어쓰고, 영속성 컨텍스트에 있던 같은 id 의 엔티티는 분리된다. (EntityUpserter 참고)
+    UpsertResult upsertAll(Collection<Member> members);
+
+    // 워터마크 (updateTime, id) 이후 수정된 회원. 끝까지 흘려 받으려면 ChangeFeed.stream 을 쓴다.
+    ChangeSlice<Member> findChangesSince(ChangeWatermark after, int size);
 }
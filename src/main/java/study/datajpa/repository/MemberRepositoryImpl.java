@@ -1,19 +1,246 @@
 package study.datajpa.repository;
 
 import lombok.RequiredArgsConstructor;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.query.Query;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.Assert;
+import study.datajpa.dto.MemberSearchCondition;
+import study.datajpa.dto.UsernameDto;
 import study.datajpa.entity.Member;
+import study.datajpa.repository.support.BulkUpdateOptions;
+import study.datajpa.repository.support.BulkUpdateProgress;
+import study.datajpa.repository.support.BulkUpdateSpec;
+import study.datajpa.repository.support.ChangeFeed;
+import study.datajpa.repository.support.ChangeSlice;
+import study.datajpa.repository.support.ChangeWatermark;
+import study.datajpa.repository.support.ChunkedBulkUpdater;
+import study.datajpa.repository.support.ColumnProjector;
+import study.datajpa.repository.support.CountMode;
+import study.datajpa.repository.support.DynamicQuery;
+import study.datajpa.repository.support.DynamicQueryExecutor;
+import study.datajpa.repository.support.EntityUpserter;
+import study.datajpa.repository.support.MultiIdLoader;
+import study.datajpa.repository.support.TeamMemberCounter;
+import study.datajpa.repository.support.UpsertResult;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @RequiredArgsConstructor
 public class MemberRepositoryImpl implements MemberRepositoryCustom{
 
+    private static final int RECOUNT_CHUNK_SIZE = 1000;
+
     private final EntityManager em;
+    private final ChunkedBulkUpdater chunkedBulkUpdater;
+    private final MultiIdLoader multiIdLoader;
+    private final ColumnProjector columnProjector;
+    private final DynamicQueryExecutor dynamicQueryExecutor;
+    private final EntityUpserter entityUpserter;
+    private final ChangeFeed changeFeed;
+    private final TeamMemberCounter teamMemberCounter;
+    private final MemberRepositorySupport memberRepositorySupport;
 
     @Override
+    @Transactional(readOnly = true)
     public List<Member> findMemberCustom() {
         return em.createQuery("select m from Member m")
                 .getResultList();
     }
+
+    // saveAll()은 건건이 persist 하고 영속성 컨텍스트에 계속 쌓이므로, 대량 적재는 이 메서드를 사용한다.
+    @Override
+    @Transactional
+    public int saveAllBatched(Iterable<Member> members, int batchSize) {
+        return memberRepositorySupport.saveAllBatched(members, batchSize);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Member> findPageByAge(int age, Pageable pageable, CountMode countMode) {
+        return memberRepositorySupport.findPageByAge(age, pageable, countMode);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public KeysetSlice<Member> findKeysetByAge(int age, String cursor, int size) {
+        return memberRepositorySupport.findKeysetByAge(age, cursor == null ? null : MemberCursor.decode(cursor), size);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Member> findAllByIdsBatched(Collection<Long> ids) {
+        return multiIdLoader.findAll(Member.class, ids);
+    }
+
+    @Override
+    @Transactional
+    public UpsertResult upsertAll(Collection<Member> members) {
+        // upsert 는 리스너를 거치지 않으므로 이전 팀과 새 팀의 회원 수를 끝나고 다시 센다.
+        Set<Long> teamIds = new HashSet<>();
+        List<Long> ids = new ArrayList<>();
+        for (Member member : members) {
+            ids.add(member.getId());
+            if (member.getTeam() != null) {
+                teamIds.add(member.getTeam().getId());
+            }
+        }
+        for (int from = 0; from < ids.size(); from += RECOUNT_CHUNK_SIZE) {
+            teamIds.addAll(em.createQuery("select distinct m.team.id from Member m where m.id in :ids", Long.class)
+                    .setParameter("ids", ids.subList(from, Math.min(from + RECOUNT_CHUNK_SIZE, ids.size())))
+                    .getResultList());
+        }
+        UpsertResult result = entityUpserter.upsertAll(Member.class, members);
+        teamMemberCounter.recount(em, teamIds);
+        return result;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ChangeSlice<Member> findChangesSince(ChangeWatermark after, int size) {
+        return changeFeed.changesSince(Member.class, after, size);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public <T> List<T> findColumnsByUsername(String username, Class<T> type) {
+        return columnProjector.list(Member.class, type, "e.username = :username", Map.of("username", username));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UsernameOnly> findProjectionsByUsername(String username) {
+        return findColumnsByUsername(username, UsernameOnly.class);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<UsernameDto> findClassProjectionByUsername(String username) {
+        return findColumnsByUsername(username, UsernameDto.class);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<Member> search(MemberSearchCondition condition, Pageable pageable) {
+        DynamicQuery<Member> query = DynamicQuery.from(Member.class)
+                .eq("username", condition.getUsername())
+                .startsWith("username", condition.getUsernamePrefix())
+                .goe("age", condition.getAgeGoe())
+                .loe("age", condition.getAgeLoe())
+                .eq("team.name", condition.getTeamName())
+                .in("team.id", condition.getTeamIds());
+        return dynamicQueryExecutor.page(query, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Member> findAllByExampleCached(Example<Member> example) {
+        return dynamicQueryExecutor.list(example);
+    }
+
+    // 감사 컬럼과 outbox 를 채우는 versioned 벌크 수정. 끝나면 영속성 컨텍스트를 비운다. (MemberRepositorySupport)
+    @Override
+    @Transactional
+    public int bulkAgePlus(int age) {
+        return memberRepositorySupport.bulkAgePlus(age);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BulkUpdateProgress bulkAgePlus(int age, BulkUpdateOptions options) {
+        return chunkedBulkUpdater.execute(
+                BulkUpdateSpec.update(Member.class, "e.age = e.age + 1")
+                        .where("e.age = :age")
+                        .param("age", age),
+                options);
+    }
+
+    // 전방향 커서로 fetchSize 만큼씩 가져오고, 다음 row로 넘어갈 때 이전 엔티티와 그 팀 프록시를 준영속으로 만든다.
+    @Override
+    public Stream<Member> streamAll(int fetchSize) {
+        DetachingCursor cursor = new DetachingCursor(scrollQuery(fetchSize).scroll(ScrollMode.FORWARD_ONLY));
+        return StreamSupport.stream(cursor, false)
+                .onClose(cursor::close);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachMember(int fetchSize, Consumer<Member> action) {
+        try (ScrollableResults results = scrollQuery(fetchSize).scroll(ScrollMode.FORWARD_ONLY)) {
+            while (results.next()) {
+                Member member = (Member) results.get(0);
+                action.accept(member);
+                detach(member);
+            }
+        }
+    }
+
+    private Query<Member> scrollQuery(int fetchSize) {
+        Assert.isTrue(fetchSize > 0, "fetchSize must be positive");
+
+        return em.unwrap(Session.class)
+                .createQuery("select m from Member m", Member.class)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE);
+    }
+
+    // 회원만 분리하면 회원이 참조하던 팀 프록시가 영속성 컨텍스트에 남아 긴 스크롤 동안 쌓인다. 프록시도 같이 분리한다.
+    // 스크롤 전에 이미 로딩돼 있던 팀은 프록시가 아닌 엔티티로 참조되므로 건드리지 않는다.
+    private void detach(Member member) {
+        if (member != null && em.contains(member)) {
+            em.detach(member);
+            if (member.getTeam() instanceof HibernateProxy) {
+                em.detach(member.getTeam());
+            }
+        }
+    }
+
+    private class DetachingCursor extends Spliterators.AbstractSpliterator<Member> {
+
+        private final ScrollableResults results;
+        private Member previous;
+
+        DetachingCursor(ScrollableResults results) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.results = results;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Member> action) {
+            detach(previous);
+            previous = null;
+            if (!results.next()) {
+                return false;
+            }
+            previous = (Member) results.get(0);
+            action.accept(previous);
+            return true;
+        }
+
+        void close() {
+            detach(previous);
+            previous = null;
+            results.close();
+        }
+    }
 }
@@ -0,0 +1,144 @@
+package study.datajpa.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.Session;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import study.datajpa.audit.AuditContext;
+import study.datajpa.audit.AuditStamp;
+import study.datajpa.entity.Member;
+import study.datajpa.outbox.OutboxWriter;
+import study.datajpa.repository.support.CountMode;
+import study.datajpa.repository.support.CountQueryCache;
+import study.datajpa.repository.support.EstimatedPage;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * MemberJpaRepository 와 MemberRepositoryImpl 이 같이 쓰는 쿼리. 트랜잭션은 부르는 쪽 메서드가 연다.
+ */
+@Component
+@RequiredArgsConstructor
+class MemberRepositorySupport {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final CountQueryCache countQueryCache;
+    private final AuditContext auditContext;
+    private final OutboxWriter outboxWriter;
+
+    // 대량 저장 - batchSize 단위로 JDBC 배치 insert 후 flush 하고, 이번 배치의 회원만 분리해서 영속성 컨텍스트가 커지지 않도록 한다.
+    // em.clear() 를 쓰지 않으므로 호출한 쪽 트랜잭션에서 관리 중이던 다른 엔티티(팀 등)는 그대로 남는다.
+    int saveAllBatched(Iterable<Member> members, int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+
+        Session session = em.unwrap(Session.class);
+        Integer previousBatchSize = session.getJdbcBatchSize();
+        session.setJdbcBatchSize(batchSize);
+        try {
+            int count = 0;
+            List<Member> batch = new ArrayList<>(batchSize);
+            for (Member member : members) {
+                em.persist(member);
+                batch.add(member);
+                count++;
+                if (batch.size() == batchSize) {
+                    flushAndDetach(batch);
+                }
+            }
+            flushAndDetach(batch);
+            return count;
+        } finally {
+            session.setJdbcBatchSize(previousBatchSize);
+        }
+    }
+
+    private void flushAndDetach(List<Member> batch) {
+        em.flush();
+        batch.forEach(em::detach);
+        batch.clear();
+    }
+
+    // 첫 페이지가 다 안 찼거나 마지막 페이지면 count 쿼리 자체를 생략한다.
+    // ESTIMATED 로 센 페이지는 EstimatedPage 다. (count 를 생략했으면 content 로 정확히 알았으므로 일반 페이지)
+    Page<Member> findPageByAge(int age, Pageable pageable, CountMode countMode) {
+        String jpql = QueryUtils.applySorting("select m from Member m where m.age = :age", pageable.getSort(), "m");
+        List<Member> content = em.createQuery(jpql, Member.class)
+                .setParameter("age", age)
+                .setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize())
+                .getResultList();
+
+        AtomicBoolean counted = new AtomicBoolean();
+        Page<Member> page = PageableExecutionUtils.getPage(content, pageable, () -> {
+            counted.set(true);
+            return countQueryCache.count("member", "age=" + age, countMode, () -> countByAge(age));
+        });
+        return countMode == CountMode.ESTIMATED && counted.get()
+                ? new EstimatedPage<>(content, pageable, page.getTotalElements()) : page;
+    }
+
+    long countByAge(int age) {
+        return em.createQuery("select count(m) from Member m where m.age = :age", Long.class)
+                .setParameter("age", age)
+                .getSingleResult();
+    }
+
+    // versioned: 벌크 수정도 버전을 올려서 이미 읽어 둔 엔티티의 수정이 덮어쓰지 않도록 한다.
+    // 감사 컬럼도 직접 채워야 변경 피드(ChangeFeed)가 바뀐 행을 놓치지 않는다.
+    int bulkAgePlus(int age) {
+        AuditStamp stamp = auditContext.current();
+        int resultCount = em.createQuery("update versioned Member m set m.age = m.age + 1," +
+                        " m.updateTime = :updateTime, m.lastModifiedBy = :auditor" +
+                        " where m.age = :age")
+                .setParameter("age", age)
+                .setParameter("updateTime", stamp.getTime())
+                .setParameter("auditor", stamp.getAuditor())
+                .executeUpdate();
+        outboxWriter.bulkUpdated(em, Member.class, "e.age = e.age + 1", "e.age = :age", null, null, Map.of("age", age));
+        // @Modifying(clearAutomatically = true) 와 같다.
+        em.clear();
+        return resultCount;
+    }
+
+    // 키셋 페이징 - offset 대신 직전 페이지 마지막 (username, id) 이후부터 읽는다. (age, username, id) 인덱스를 탄다.
+    // username 이 null 인 회원은 맨 뒤에 id 순으로 온다.
+    KeysetSlice<Member> findKeysetByAge(int age, MemberCursor after, int size) {
+        Assert.isTrue(size > 0, "size must be positive");
+
+        String jpql = "select m from Member m where m.age = :age";
+        if (after != null && after.getUsername() == null) {
+            jpql += " and m.username is null and m.id < :id";
+        } else if (after != null) {
+            jpql += " and ((m.username <= :username and (m.username < :username or m.id < :id))" +
+                    " or m.username is null)";
+        }
+        TypedQuery<Member> query = em.createQuery(jpql + " order by m.username desc nulls last, m.id desc", Member.class)
+                .setParameter("age", age)
+                .setMaxResults(size + 1);
+        if (after != null) {
+            query.setParameter("id", after.getId());
+            if (after.getUsername() != null) {
+                query.setParameter("username", after.getUsername());
+            }
+        }
+
+        List<Member> result = query.getResultList();
+        if (result.size() <= size) {
+            return new KeysetSlice<>(result, null);
+        }
+        List<Member> content = result.subList(0, size);
+        return new KeysetSlice<>(content, MemberCursor.of(content.get(size - 1)).encode());
+    }
+}
@@ -0,0 +1,17 @@
+package study.datajpa.repository;
+
+import study.datajpa.entity.Team;
+import study.datajpa.repository.support.UpsertResult;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface TeamRepositoryCustom {
+
+    // id 목록을 IN 쿼리 몇 번으로 나눠 조회. 입력 순서대로, 없는 id 는 빠진다.
+    List<Team> findAllByIdsBatched(Collection<Long> ids);
+
+    // id 가 정해진 팀을 조회/merge 없이 upsert 배치로 저장한다. (동기화 작업용)
+    // @Version 검사 없이 덮어쓰고, 영속성 컨텍스트에 있던 같은 id 의 엔티티는 분리된다. (EntityUpserter 참고)
+    UpsertResult upsertAll(Collection<Team> teams);
+}
@@ -0,0 +1,30 @@
+package study.datajpa.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.entity.Team;
+import study.datajpa.repository.support.EntityUpserter;
+import study.datajpa.repository.support.MultiIdLoader;
+import study.datajpa.repository.support.UpsertResult;
+
+import java.util.Collection;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class TeamRepositoryImpl implements TeamRepositoryCustom {
+
+    private final MultiIdLoader multiIdLoader;
+    private final EntityUpserter entityUpserter;
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Team> findAllByIdsBatched(Collection<Long> ids) {
+        return multiIdLoader.findAll(Team.class, ids);
+    }
+
+    @Override
+    @Transactional
+    public UpsertResult upsertAll(Collection<Team> teams) {
+        return entityUpserter.upsertAll(Team.class, teams);
+    }
+}
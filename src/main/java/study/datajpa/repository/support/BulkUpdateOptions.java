@@ -0,0 +1,50 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+@Getter
+public class BulkUpdateOptions {
+
+    // 한 트랜잭션이 담당하는 id 구간의 폭
+    private final int chunkSize;
+    private boolean parallel;
+    private Executor executor;
+    private Long resumeFrom;
+    private Consumer<BulkUpdateProgress> progressListener = progress -> { };
+
+    private BulkUpdateOptions(int chunkSize) {
+        Assert.isTrue(chunkSize > 0, "chunkSize must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    public static BulkUpdateOptions chunkSize(int chunkSize) {
+        return new BulkUpdateOptions(chunkSize);
+    }
+
+    // executor 를 지정하지 않으면 ChunkedBulkUpdater 의 기본 풀(datajpa.bulk-update.parallelism)을 쓴다.
+    public BulkUpdateOptions parallel() {
+        this.parallel = true;
+        return this;
+    }
+
+    public BulkUpdateOptions parallel(Executor executor) {
+        this.parallel = true;
+        this.executor = executor;
+        return this;
+    }
+
+    // 실패 시 예외에 담긴 resumeFrom 을 넘기면 그 id 부터 다시 시작한다.
+    public BulkUpdateOptions resumeFrom(Long id) {
+        this.resumeFrom = id;
+        return this;
+    }
+
+    public BulkUpdateOptions onProgress(Consumer<BulkUpdateProgress> listener) {
+        this.progressListener = listener;
+        return this;
+    }
+}
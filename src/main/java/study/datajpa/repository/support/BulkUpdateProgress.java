@@ -0,0 +1,27 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
+public class BulkUpdateProgress {
+
+    private final int completedChunks;
+    private final int totalChunks;
+    private final long updatedRows;
+
+    // 여기서부터 다시 실행하면 아직 커밋되지 않은 구간만 처리한다. 모두 끝났으면 null.
+    private final Long resumeFrom;
+
+    public BulkUpdateProgress(int completedChunks, int totalChunks, long updatedRows, Long resumeFrom) {
+        this.completedChunks = completedChunks;
+        this.totalChunks = totalChunks;
+        this.updatedRows = updatedRows;
+        this.resumeFrom = resumeFrom;
+    }
+
+    public boolean isDone() {
+        return completedChunks == totalChunks;
+    }
+}
@@ -0,0 +1,47 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 청크 단위로 나눠 실행할 벌크 update. 엔티티 별칭은 항상 e 를 사용한다.
+ * <pre>
+ * BulkUpdateSpec.update(Member.class, "e.age = e.age + 1")
+ *         .where("e.age = :age")
+ *         .param("age", 10);
+ * </pre>
+ */
+@Getter
+public class BulkUpdateSpec {
+
+    private final Class<?> entityType;
+    private final String setClause;
+    private String whereClause = "1 = 1";
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+    private BulkUpdateSpec(Class<?> entityType, String setClause) {
+        this.entityType = entityType;
+        this.setClause = setClause;
+    }
+
+    public static BulkUpdateSpec update(Class<?> entityType, String setClause) {
+        return new BulkUpdateSpec(entityType, setClause);
+    }
+
+    public BulkUpdateSpec where(String whereClause) {
+        this.whereClause = whereClause;
+        return this;
+    }
+
+    public BulkUpdateSpec param(String name, Object value) {
+        parameters.put(name, value);
+        return this;
+    }
+
+    public Map<String, Object> getParameters() {
+        return Collections.unmodifiableMap(parameters);
+    }
+}
@@ -0,0 +1,117 @@
+package study.datajpa.repository.support;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import study.datajpa.entity.JpaBaseEntity;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.EntityType;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * JpaBaseEntity 를 상속한 엔티티의 변경분을 (updateTime, id) 워터마크 이후부터 순서대로 읽는다.
+ * 키셋 페이징과 같은 방식이라 offset 없이 (update_time, id) 인덱스 범위만 읽는다. 엔티티마다 이 인덱스를 선언해야 한다. (Member 의 idx_member_update_time_id)
+ * <p>
+ * updateTime 은 커밋 시각이 아니라 트랜잭션이 처음 쓴 시각이다. 긴 트랜잭션이 워터마크보다 이른 시각으로 늦게 커밋하면 놓칠 수 있으므로,
+ * datajpa.change-feed.settle-time 보다 최근에 바뀐 행은 다음 호출로 미룬다. settle-time 보다 오래 열려 있는 트랜잭션의 변경은 여전히 놓칠 수 있으므로
+ * 쓰기 트랜잭션의 최대 길이(커넥션 누수 기준 datajpa.pool.leak-threshold 등)보다 길게 잡는다. 0 이면 기동 시 실패한다.
+ * <p>
+ * 벌크 수정(bulkAgePlus 등)도 updateTime 을 바꿔야 피드에 나온다. 네이티브 SQL 로 바꾼 행은 직접 update_time 을 채운다.
+ */
+@Component
+public class ChangeFeed {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final EntityManagerFactory emf;
+    private final TransactionTemplate readTransaction;
+    private final Clock clock;
+    private final Duration settleTime;
+
+    public ChangeFeed(EntityManagerFactory emf,
+                      PlatformTransactionManager transactionManager,
+                      Clock clock,
+                      @Value("${datajpa.change-feed.settle-time:30s}") Duration settleTime) {
+        Assert.isTrue(!settleTime.isNegative() && !settleTime.isZero(),
+                "datajpa.change-feed.settle-time must be positive, otherwise late commits behind the watermark are lost");
+        this.emf = emf;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.clock = clock;
+        this.settleTime = settleTime;
+    }
+
+    /**
+     * 워터마크 이후 변경된 엔티티를 (updateTime, id) 순으로 최대 limit 건 읽는다.
+     */
+    @Transactional(readOnly = true)
+    public <T extends JpaBaseEntity> ChangeSlice<T> changesSince(Class<T> type, ChangeWatermark after, int limit) {
+        Assert.isTrue(limit > 0, "limit must be positive");
+        EntityType<T> entityType = emf.getMetamodel().entity(type);
+        Assert.isTrue(entityType.getIdType().getJavaType() == Long.class, "change feed requires a Long id");
+        String idName = entityType.getId(Long.class).getName();
+
+        String jpql = "select e from " + entityType.getName() + " e where e.updateTime is not null";
+        if (!after.isInitial()) {
+            jpql += " and e.updateTime >= :updateTime" +
+                    " and (e.updateTime > :updateTime or e." + idName + " > :id)";
+        }
+        jpql += " and e.updateTime < :settled";
+        TypedQuery<T> query = em.createQuery(jpql + " order by e.updateTime, e." + idName, type)
+                .setMaxResults(limit + 1);
+        if (!after.isInitial()) {
+            query.setParameter("updateTime", after.getUpdateTime())
+                    .setParameter("id", after.getId());
+        }
+        query.setParameter("settled", LocalDateTime.now(clock).minus(settleTime));
+
+        List<T> result = query.getResultList();
+        boolean hasMore = result.size() > limit;
+        List<T> content = hasMore ? result.subList(0, limit) : result;
+        if (content.isEmpty()) {
+            return new ChangeSlice<>(content, after, false);
+        }
+        T last = content.get(content.size() - 1);
+        Long lastId = (Long) emf.getPersistenceUnitUtil().getIdentifier(last);
+        return new ChangeSlice<>(content, ChangeWatermark.of(last, lastId), hasMore);
+    }
+
+    /**
+     * 워터마크 이후 변경분을 chunkSize 건씩 끝까지 넘긴다. 청크마다 읽기 트랜잭션을 새로 열고 닫아서
+     * 영속성 컨텍스트와 커넥션 점유가 청크 크기로 제한된다. 마지막으로 넘긴 위치를 반환하므로 저장해 두고 다음 실행에 이어서 쓴다.
+     */
+    public <T extends JpaBaseEntity> ChangeWatermark stream(Class<T> type, ChangeWatermark after, int chunkSize,
+                                                            Consumer<List<T>> consumer) {
+        Assert.state(!TransactionSynchronizationManager.isActualTransactionActive(),
+                "change feed stream runs its own transactions and must not be called inside one");
+
+        ChangeWatermark watermark = after;
+        boolean hasMore = true;
+        while (hasMore) {
+            ChangeWatermark from = watermark;
+            ChangeSlice<T> slice = readTransaction.execute(status -> {
+                ChangeSlice<T> chunk = changesSince(type, from, chunkSize);
+                if (!chunk.getContent().isEmpty()) {
+                    consumer.accept(chunk.getContent());
+                }
+                return chunk;
+            });
+            watermark = slice.getWatermark();
+            hasMore = slice.hasMore();
+        }
+        return watermark;
+    }
+}
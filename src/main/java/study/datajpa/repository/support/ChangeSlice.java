@@ -0,0 +1,29 @@
+package study.datajpa.repository.support;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@Getter
+@ToString
+public class ChangeSlice<T> {
+
+    private final List<T> content;
+
+    // 다음 호출에 넘길 위치. 받은 행이 없으면 요청한 위치 그대로다.
+    private final ChangeWatermark watermark;
+    @Getter(AccessLevel.NONE)
+    private final boolean hasMore;
+
+    public ChangeSlice(List<T> content, ChangeWatermark watermark, boolean hasMore) {
+        this.content = content;
+        this.watermark = watermark;
+        this.hasMore = hasMore;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
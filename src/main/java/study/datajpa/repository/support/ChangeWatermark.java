@@ -0,0 +1,58 @@
+package study.datajpa.repository.support;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import study.datajpa.entity.JpaBaseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 변경 피드의 위치 - 마지막으로 받은 행의 (updateTime, id). 같은 시각에 바뀐 행은 id 로 구분한다.
+ */
+@Getter
+@EqualsAndHashCode
+@ToString
+public class ChangeWatermark {
+
+    private final LocalDateTime updateTime;
+    private final Long id;
+
+    public ChangeWatermark(LocalDateTime updateTime, Long id) {
+        this.updateTime = updateTime;
+        this.id = id;
+    }
+
+    // 처음부터 읽을 때. updateTime 이 없는 행은 피드에 나오지 않는다.
+    public static ChangeWatermark initial() {
+        return new ChangeWatermark(null, null);
+    }
+
+    public static ChangeWatermark of(JpaBaseEntity entity, Long id) {
+        return new ChangeWatermark(entity.getUpdateTime(), id);
+    }
+
+    public boolean isInitial() {
+        return updateTime == null;
+    }
+
+    public String encode() {
+        String raw = isInitial() ? "" : id + ":" + updateTime;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static ChangeWatermark decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            if (raw.isEmpty()) {
+                return initial();
+            }
+            int separator = raw.indexOf(':');
+            return new ChangeWatermark(LocalDateTime.parse(raw.substring(separator + 1)), Long.valueOf(raw.substring(0, separator)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("invalid watermark token: " + token, e);
+        }
+    }
+}
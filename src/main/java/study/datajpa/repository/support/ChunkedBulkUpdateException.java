@@ -0,0 +1,21 @@
+package study.datajpa.repository.support;
+
+public class ChunkedBulkUpdateException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BulkUpdateProgress progress;
+
+    public ChunkedBulkUpdateException(String message, Throwable cause, BulkUpdateProgress progress) {
+        super(message, cause);
+        this.progress = progress;
+    }
+
+    public BulkUpdateProgress getProgress() {
+        return progress;
+    }
+
+    public Long getResumeFrom() {
+        return progress.getResumeFrom();
+    }
+}
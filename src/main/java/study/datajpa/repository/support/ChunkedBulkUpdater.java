@@ -0,0 +1,241 @@
+package study.datajpa.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import study.datajpa.audit.AuditContext;
+import study.datajpa.audit.AuditStamp;
+import study.datajpa.entity.JpaBaseEntity;
+import study.datajpa.outbox.OutboxWriter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Parameter;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.metamodel.EntityType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 하나의 벌크 update 를 id 구간(청크)으로 나눠 청크마다 별도 트랜잭션으로 실행한다.
+ * 한 번에 잡는 row lock 과 undo 로그가 청크 크기로 제한되고, 실패하면 커밋된 앞 구간을 건너뛰고 이어서 실행할 수 있다.
+ * <p>
+ * 병렬 실행 시 실패 지점 뒤의 청크가 이미 커밋되었을 수 있으므로, where 조건은 이미 갱신된 row 를 다시 고르지 않도록 작성한다.
+ * (예: e.age = :age 인 row 의 age 를 올리는 경우)
+ * <p>
+ * 끝나면(실패해도) 호출한 스레드에 묶인 영속성 컨텍스트(OSIV 등)를 비운다. 그 전에 읽어 둔 엔티티는 준영속이 되므로 다시 조회해야 한다.
+ */
+@Slf4j
+@Component
+public class ChunkedBulkUpdater implements DisposableBean {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final EntityManagerFactory emf;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate chunkTransaction;
+    private final ThreadPoolTaskExecutor defaultExecutor;
+    private final AuditContext auditContext;
+    private final OutboxWriter outboxWriter;
+
+    public ChunkedBulkUpdater(EntityManagerFactory emf,
+                              PlatformTransactionManager transactionManager,
+                              AuditContext auditContext,
+                              OutboxWriter outboxWriter,
+                              @Value("${datajpa.bulk-update.parallelism:4}") int parallelism) {
+        this.emf = emf;
+        this.auditContext = auditContext;
+        this.outboxWriter = outboxWriter;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        // 바깥 트랜잭션이 없는 것을 execute 에서 확인하므로 청크마다 새 트랜잭션이 열린다.
+        this.chunkTransaction = new TransactionTemplate(transactionManager);
+
+        this.defaultExecutor = new ThreadPoolTaskExecutor();
+        this.defaultExecutor.setCorePoolSize(parallelism);
+        this.defaultExecutor.setMaxPoolSize(parallelism);
+        this.defaultExecutor.setThreadNamePrefix("bulk-update-");
+        this.defaultExecutor.initialize();
+    }
+
+    public BulkUpdateProgress execute(BulkUpdateSpec spec, BulkUpdateOptions options) {
+        Assert.state(!TransactionSynchronizationManager.isActualTransactionActive(),
+                "chunked bulk update runs its own transactions and must not be called inside one");
+
+        EntityType<?> entityType = emf.getMetamodel().entity(spec.getEntityType());
+        Assert.isTrue(entityType.getIdType().getJavaType() == Long.class, "chunked bulk update requires a Long id");
+        String entityName = entityType.getName();
+        String idName = entityType.getId(Long.class).getName();
+
+        List<long[]> chunks = readTransaction.execute(status -> split(spec, options, entityName, idName));
+        ChunkTracker tracker = new ChunkTracker(chunks);
+        if (chunks.isEmpty()) {
+            return tracker.snapshot();
+        }
+
+        // 버전 속성이 있으면 versioned 로 버전도 올린다.
+        // 감사 컬럼이 있으면 청크 트랜잭션의 감사 시각으로 수정 시각도 바꾼다.
+        boolean audited = JpaBaseEntity.class.isAssignableFrom(spec.getEntityType());
+        ChunkUpdate update = new ChunkUpdate(
+                "update " + (entityType.hasVersionAttribute() ? "versioned " : "") + entityName + " e set " + spec.getSetClause() +
+                        (audited ? ", e.updateTime = :auditTime, e.lastModifiedBy = :auditor" : "") +
+                        " where (" + spec.getWhereClause() + ") and e." + idName + " between :chunkFrom and :chunkTo",
+                audited);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        try {
+            if (options.isParallel()) {
+                Executor executor = options.getExecutor() != null ? options.getExecutor() : defaultExecutor;
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (int i = 0; i < chunks.size(); i++) {
+                    int index = i;
+                    futures.add(CompletableFuture.runAsync(() -> {
+                        if (failure.get() == null) {
+                            runChunk(spec, options, update, tracker, index, failure);
+                        }
+                    }, executor));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            } else {
+                for (int i = 0; i < chunks.size() && failure.get() == null; i++) {
+                    runChunk(spec, options, update, tracker, i, failure);
+                }
+            }
+        } finally {
+            // 병렬 청크는 다른 스레드의 컨텍스트에서 비워지므로, 호출한 쪽 컨텍스트에 남은 엔티티는 여기서 비운다.
+            em.clear();
+        }
+
+        BulkUpdateProgress progress = tracker.snapshot();
+        if (failure.get() != null) {
+            throw new ChunkedBulkUpdateException("chunked bulk update on " + entityName +
+                    " failed, resume from id " + progress.getResumeFrom(), failure.get(), progress);
+        }
+        return progress;
+    }
+
+    private List<long[]> split(BulkUpdateSpec spec, BulkUpdateOptions options, String entityName, String idName) {
+        String jpql = "select min(e." + idName + "), max(e." + idName + ") from " + entityName + " e" +
+                " where (" + spec.getWhereClause() + ")";
+        if (options.getResumeFrom() != null) {
+            jpql += " and e." + idName + " >= :resumeFrom";
+        }
+        Query query = em.createQuery(jpql);
+        bind(query, spec.getParameters());
+        if (options.getResumeFrom() != null) {
+            query.setParameter("resumeFrom", options.getResumeFrom());
+        }
+
+        Object[] bounds = (Object[]) query.getSingleResult();
+        if (bounds[0] == null) {
+            return Collections.emptyList();
+        }
+        long min = (Long) bounds[0];
+        long max = (Long) bounds[1];
+        List<long[]> chunks = new ArrayList<>();
+        for (long from = min; from <= max; from += options.getChunkSize()) {
+            chunks.add(new long[]{from, Math.min(from + options.getChunkSize() - 1, max)});
+        }
+        return chunks;
+    }
+
+    private void runChunk(BulkUpdateSpec spec, BulkUpdateOptions options, ChunkUpdate update,
+                          ChunkTracker tracker, int index, AtomicReference<RuntimeException> failure) {
+        long[] chunk = tracker.chunk(index);
+        try {
+            Integer updated = chunkTransaction.execute(status -> {
+                Query query = em.createQuery(update.jpql);
+                bind(query, spec.getParameters());
+                if (update.audited) {
+                    AuditStamp stamp = auditContext.current();
+                    query.setParameter("auditTime", stamp.getTime())
+                            .setParameter("auditor", stamp.getAuditor());
+                }
+                int count = query.setParameter("chunkFrom", chunk[0])
+                        .setParameter("chunkTo", chunk[1])
+                        .executeUpdate();
+                outboxWriter.bulkUpdated(em, spec.getEntityType(), spec.getSetClause(), spec.getWhereClause(),
+                        chunk[0], chunk[1], spec.getParameters());
+                // @Modifying(clearAutomatically = true) 처럼 청크마다 영속성 컨텍스트를 비운다. 2차 캐시 영역은 Hibernate 가 벌크 연산 후 비운다.
+                em.clear();
+                return count;
+            });
+            options.getProgressListener().accept(tracker.complete(index, updated));
+        } catch (RuntimeException e) {
+            log.warn("bulk update chunk [{}, {}] failed", chunk[0], chunk[1], e);
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private static void bind(Query query, Map<String, Object> parameters) {
+        for (Parameter<?> parameter : query.getParameters()) {
+            if (parameters.containsKey(parameter.getName())) {
+                query.setParameter(parameter.getName(), parameters.get(parameter.getName()));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        defaultExecutor.shutdown();
+    }
+
+    private static class ChunkUpdate {
+
+        final String jpql;
+        final boolean audited;
+
+        ChunkUpdate(String jpql, boolean audited) {
+            this.jpql = jpql;
+            this.audited = audited;
+        }
+    }
+
+    private static class ChunkTracker {
+
+        private final List<long[]> chunks;
+        private final boolean[] completed;
+        private int completedChunks;
+        private long updatedRows;
+
+        ChunkTracker(List<long[]> chunks) {
+            this.chunks = chunks;
+            this.completed = new boolean[chunks.size()];
+        }
+
+        long[] chunk(int index) {
+            return chunks.get(index);
+        }
+
+        synchronized BulkUpdateProgress complete(int index, int rows) {
+            completed[index] = true;
+            completedChunks++;
+            updatedRows += rows;
+            return snapshot();
+        }
+
+        // 앞에서부터 연속으로 커밋된 구간 다음이 재시작 지점
+        synchronized BulkUpdateProgress snapshot() {
+            Long resumeFrom = null;
+            for (int i = 0; i < completed.length; i++) {
+                if (!completed[i]) {
+                    resumeFrom = chunks.get(i)[0];
+                    break;
+                }
+            }
+            return new BulkUpdateProgress(completedChunks, chunks.size(), updatedRows, resumeFrom);
+        }
+    }
+}
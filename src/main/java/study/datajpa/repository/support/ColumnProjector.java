@@ -0,0 +1,203 @@
+package study.datajpa.repository.support;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.description.modifier.Visibility;
+import net.bytebuddy.dynamic.DynamicType;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.EqualsMethod;
+import net.bytebuddy.implementation.FieldAccessor;
+import net.bytebuddy.implementation.HashCodeMethod;
+import net.bytebuddy.implementation.Implementation;
+import net.bytebuddy.implementation.MethodCall;
+import net.bytebuddy.implementation.ToStringMethod;
+import org.springframework.beans.BeanUtils;
+import org.springframework.data.mapping.PreferredConstructor;
+import org.springframework.data.mapping.PropertyPath;
+import org.springframework.data.mapping.model.PreferredConstructorDiscoverer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static net.bytebuddy.matcher.ElementMatchers.isEquals;
+import static net.bytebuddy.matcher.ElementMatchers.isHashCode;
+import static net.bytebuddy.matcher.ElementMatchers.isToString;
+import static net.bytebuddy.matcher.ElementMatchers.named;
+
+/**
+ * 인터페이스/클래스 프로젝션을 필요한 컬럼만 select 하는 JPQL 로 실행한다. 엔티티를 만들지 않는다.
+ * <ul>
+ *     <li>프로퍼티 이름은 {@link PropertyPath} 로 해석한다. getTeamName() 은 team.name 이 되고, 중간 연관은 left join 한다.</li>
+ *     <li>클래스 프로젝션은 생성자 파라미터, 인터페이스 프로젝션은 getter 가 프로퍼티다.</li>
+ *     <li>인터페이스는 필드와 getter 만 있는 구현 클래스를 만들어 쓴다. 행 매핑은 생성자 MethodHandle 호출 한 번이다.</li>
+ * </ul>
+ * (엔티티, 프로젝션 타입) 별로 JPQL 과 매핑을 한 번만 만들어 캐시한다. where 절의 엔티티 별칭은 e 를 사용한다.
+ */
+@Component
+public class ColumnProjector {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final Map<List<Class<?>>, ProjectionPlan> plans = new ConcurrentHashMap<>();
+
+    public <P> List<P> list(Class<?> entityType, Class<P> projectionType, String where, Map<String, ?> parameters) {
+        ProjectionPlan plan = plans.computeIfAbsent(List.of(entityType, projectionType), key -> createPlan(entityType, projectionType));
+
+        Query query = em.createQuery(plan.selectFrom + " where " + where);
+        parameters.forEach(query::setParameter);
+
+        List<?> rows = query.getResultList();
+        List<P> result = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            Object[] values = plan.columnCount == 1 ? new Object[]{row} : (Object[]) row;
+            result.add(projectionType.cast(plan.newInstance(values)));
+        }
+        return result;
+    }
+
+    private ProjectionPlan createPlan(Class<?> entityType, Class<?> projectionType) {
+        Map<String, Class<?>> properties = new LinkedHashMap<>();
+        MethodHandle constructor;
+        if (projectionType.isInterface()) {
+            for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(projectionType)) {
+                properties.put(descriptor.getName(), descriptor.getPropertyType());
+            }
+            checkClosed(projectionType, properties);
+            constructor = implement(projectionType, properties);
+        } else {
+            PreferredConstructor<?, ?> preferred = PreferredConstructorDiscoverer.discover(projectionType);
+            Assert.notNull(preferred, () -> "no usable constructor on " + projectionType.getName());
+            for (PreferredConstructor.Parameter<Object, ?> parameter : preferred.getParameters()) {
+                properties.put(parameter.getName(), parameter.getType().getType());
+            }
+            constructor = unreflect(preferred.getConstructor());
+        }
+        Assert.isTrue(!properties.isEmpty(), () -> projectionType.getName() + " has no properties to select");
+
+        String entityName = em.getMetamodel().entity(entityType).getName();
+        return new ProjectionPlan(selectFrom(entityName, entityType, properties.keySet()), properties.size(),
+                constructor.asSpreader(Object[].class, properties.size())
+                        .asType(MethodType.methodType(Object.class, Object[].class)));
+    }
+
+    // select e.username, j0.name from Member e left join e.team j0
+    private static String selectFrom(String entityName, Class<?> entityType, Iterable<String> properties) {
+        Map<String, String> aliases = new LinkedHashMap<>();
+        List<String> joins = new ArrayList<>();
+        List<String> columns = new ArrayList<>();
+        for (String property : properties) {
+            PropertyPath path = PropertyPath.from(property, entityType);
+            String alias = "e";
+            String dotPath = "";
+            while (path.hasNext()) {
+                dotPath = dotPath + "." + path.getSegment();
+                String parent = alias;
+                String segment = path.getSegment();
+                alias = aliases.computeIfAbsent(dotPath, key -> {
+                    String joinAlias = "j" + joins.size();
+                    joins.add(" left join " + parent + "." + segment + " " + joinAlias);
+                    return joinAlias;
+                });
+                path = path.next();
+            }
+            columns.add(alias + "." + path.getSegment());
+        }
+        return "select " + String.join(", ", columns) + " from " + entityName + " e" + String.join("", joins);
+    }
+
+    private static void checkClosed(Class<?> projectionType, Map<String, Class<?>> properties) {
+        for (Method method : projectionType.getMethods()) {
+            boolean getter = method.getParameterCount() == 0 && properties.keySet().stream()
+                    .anyMatch(name -> method.getName().equalsIgnoreCase("get" + name) || method.getName().equalsIgnoreCase("is" + name));
+            Assert.isTrue(getter && !method.isDefault(), () -> "only closed projections with plain getters are supported: " + method);
+        }
+    }
+
+    // 프로퍼티마다 필드와 getter 를 두고, 모든 필드를 받는 생성자를 가진 구현 클래스를 만든다.
+    private static MethodHandle implement(Class<?> projectionType, Map<String, Class<?>> properties) {
+        DynamicType.Builder<Object> builder = new ByteBuddy()
+                .subclass(Object.class)
+                .name(projectionType.getName() + "$Columns")
+                .implement(projectionType);
+
+        Implementation.Composable constructor = invokeObjectConstructor();
+        int index = 0;
+        for (Map.Entry<String, Class<?>> property : properties.entrySet()) {
+            builder = builder.defineField(property.getKey(), property.getValue(), Visibility.PRIVATE);
+            constructor = constructor.andThen(FieldAccessor.ofField(property.getKey()).setsArgumentAt(index++));
+        }
+        for (PropertyDescriptor descriptor : BeanUtils.getPropertyDescriptors(projectionType)) {
+            builder = builder.method(named(descriptor.getReadMethod().getName()))
+                    .intercept(FieldAccessor.ofField(descriptor.getName()));
+        }
+
+        Class<?> type = builder
+                .defineConstructor(Visibility.PUBLIC)
+                .withParameters(properties.values().toArray(new Class<?>[0]))
+                .intercept(constructor)
+                .method(isToString()).intercept(ToStringMethod.prefixedBySimpleClassName())
+                .method(isEquals()).intercept(EqualsMethod.isolated())
+                .method(isHashCode()).intercept(HashCodeMethod.usingDefaultOffset())
+                .make()
+                .load(projectionType.getClassLoader(), ClassLoadingStrategy.Default.WRAPPER)
+                .getLoaded();
+        try {
+            return unreflect(type.getConstructor(properties.values().toArray(new Class<?>[0])));
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Implementation.Composable invokeObjectConstructor() {
+        try {
+            return MethodCall.invoke(Object.class.getConstructor());
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle unreflect(Constructor<?> constructor) {
+        try {
+            return MethodHandles.publicLookup().unreflectConstructor(constructor);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("projection constructor must be public: " + constructor, e);
+        }
+    }
+
+    private static class ProjectionPlan {
+
+        private final String selectFrom;
+        private final int columnCount;
+        private final MethodHandle constructor;
+
+        ProjectionPlan(String selectFrom, int columnCount, MethodHandle constructor) {
+            this.selectFrom = selectFrom;
+            this.columnCount = columnCount;
+            this.constructor = constructor;
+        }
+
+        Object newInstance(Object[] values) {
+            try {
+                return constructor.invokeExact(values);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package study.datajpa.repository.support;
+
+public enum CountMode {
+
+    // 항상 count 쿼리 실행
+    EXACT,
+
+    // TTL 안에서는 캐시된 값, 다른 트랜잭션의 쓰기가 커밋되면 무효화
+    CACHED,
+
+    // TTL 없이 캐시된 값을 쓰고, 테이블에 쓰기가 커밋될 때만 다시 센다. (추정치가 아니라 만료 없는 캐시)
+    UNTIL_WRITE,
+
+    // 추정치. 조건의 비율(정확히 센 값 / 그때 테이블 행 수)을 TTL 동안 두고 지금의 테이블 행 수(DB 통계)에 곱한다.
+    // 쓰기로는 무효화하지 않으므로 쓰기가 잦아 CACHED 가 매번 다시 세는 목록에 쓴다. 결과는 EstimatedPage 로 표시된다.
+    ESTIMATED
+}
@@ -0,0 +1,183 @@
+package study.datajpa.repository.support;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 페이징 count 결과를 (테이블, 조건) 단위로 캐시한다.
+ * <ul>
+ *     <li>insert/update/delete/merge SQL 이 나간 테이블은 그 트랜잭션이 커밋된 뒤에 무효화한다. 롤백이면 그대로 둔다.</li>
+ *     <li>쓰기를 한 트랜잭션 안에서는 아직 커밋 전이므로 그 테이블의 캐시를 읽지도 쓰지도 않고 바로 센다.</li>
+ *     <li>커밋 전에 센 값을 무효화 뒤에 다시 넣지 않도록 테이블마다 세대 번호를 두고, 세는 동안 바뀌었으면 버린다.</li>
+ * </ul>
+ * 벌크 연산도 SQL 로 감지하므로 함께 무효화된다.
+ * <p>
+ * {@link CountMode#ESTIMATED} 의 비율은 따로 두고 쓰기로 무효화하지 않는다. 테이블 통계를 읽을 수 없으면 CACHED 로 센다.
+ */
+@Component
+public class CountQueryCache implements StatementListener {
+
+    private static final Pattern WRITE_STATEMENT =
+            Pattern.compile("^\\s*(?:insert\\s+into|update|delete\\s+from|merge\\s+into)\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+    private final Map<String, Map<String, CachedCount>> counts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Ratio>> ratios = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final int maxEntriesPerTable;
+    private final TableRowEstimator rowEstimator;
+
+    public CountQueryCache(@Value("${datajpa.count-cache.ttl:30s}") Duration ttl,
+                           @Value("${datajpa.count-cache.max-entries-per-table:1000}") int maxEntriesPerTable,
+                           TableRowEstimator rowEstimator) {
+        this.ttlNanos = ttl.toNanos();
+        this.maxEntriesPerTable = maxEntriesPerTable;
+        this.rowEstimator = rowEstimator;
+    }
+
+    public long count(String table, String predicate, CountMode mode, LongSupplier countQuery) {
+        String key = normalize(table);
+        if (mode == CountMode.EXACT || writtenInCurrentTransaction(key)) {
+            return countQuery.getAsLong();
+        }
+        if (mode == CountMode.ESTIMATED) {
+            OptionalLong rows = rowEstimator.estimate(key);
+            if (rows.isPresent()) {
+                return estimate(key, predicate, rows.getAsLong(), countQuery);
+            }
+        }
+
+        AtomicLong generation = generations.computeIfAbsent(key, k -> new AtomicLong());
+        long loadedGeneration = generation.get();
+        Map<String, CachedCount> tableCounts = counts.computeIfAbsent(key, k -> new ConcurrentHashMap<>());
+        CachedCount cached = tableCounts.get(predicate);
+        long now = System.nanoTime();
+        if (cached != null && (mode == CountMode.UNTIL_WRITE || now - cached.loadedAt < ttlNanos)) {
+            return cached.value;
+        }
+
+        long value = countQuery.getAsLong();
+        if (tableCounts.size() >= maxEntriesPerTable) {
+            tableCounts.clear();
+        }
+        CachedCount loaded = new CachedCount(value, now);
+        tableCounts.put(predicate, loaded);
+        // 세는 사이에 커밋된 쓰기가 있었으면 이 값은 이미 낡았다.
+        if (generation.get() != loadedGeneration) {
+            tableCounts.remove(predicate, loaded);
+        }
+        return value;
+    }
+
+    private long estimate(String table, String predicate, long rows, LongSupplier countQuery) {
+        Map<String, Ratio> tableRatios = ratios.computeIfAbsent(table, k -> new ConcurrentHashMap<>());
+        Ratio ratio = tableRatios.get(predicate);
+        long now = System.nanoTime();
+        if (ratio != null && now - ratio.loadedAt < ttlNanos) {
+            return ratio.scale(rows);
+        }
+
+        long value = countQuery.getAsLong();
+        if (tableRatios.size() >= maxEntriesPerTable) {
+            tableRatios.clear();
+        }
+        tableRatios.put(predicate, new Ratio(value, rows, now));
+        return value;
+    }
+
+    public void invalidate(String table) {
+        String key = normalize(table);
+        generations.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+        counts.remove(key);
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        Matcher matcher = WRITE_STATEMENT.matcher(sql);
+        if (!matcher.find()) {
+            return;
+        }
+
+        String table = normalize(matcher.group(1));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            writtenTables(true).add(table);
+        } else {
+            invalidate(table);
+        }
+    }
+
+    private boolean writtenInCurrentTransaction(String table) {
+        Set<String> tables = writtenTables(false);
+        return tables != null && tables.contains(table);
+    }
+
+    // 트랜잭션마다 쓰기가 일어난 테이블을 모아 두었다가 커밋된 뒤에 무효화한다.
+    @SuppressWarnings("unchecked")
+    private Set<String> writtenTables(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Set<String> tables = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (tables == null && create) {
+            Set<String> newTables = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, newTables);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CountQueryCache.this);
+                    if (status == STATUS_COMMITTED) {
+                        newTables.forEach(CountQueryCache.this::invalidate);
+                    }
+                }
+            });
+            tables = newTables;
+        }
+        return tables;
+    }
+
+    private static String normalize(String table) {
+        return table.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Ratio {
+
+        private final long count;
+        private final long tableRows;
+        private final long loadedAt;
+
+        Ratio(long count, long tableRows, long loadedAt) {
+            this.count = count;
+            this.tableRows = tableRows;
+            this.loadedAt = loadedAt;
+        }
+
+        long scale(long rows) {
+            return tableRows == 0 ? count : Math.round((double) count * rows / tableRows);
+        }
+    }
+
+    private static class CachedCount {
+
+        private final long value;
+        private final long loadedAt;
+
+        CachedCount(long value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.OptionalLong;
+
+/**
+ * DB 의 테이블 통계에서 행 수 추정치를 읽는다. (H2: INFORMATION_SCHEMA.TABLES.ROW_COUNT_ESTIMATE)
+ * 지원하지 않는 DB 면 항상 비어 있으므로 {@link CountMode#ESTIMATED} 는 CACHED 처럼 동작한다.
+ */
+@Component
+public class DatabaseTableRowEstimator implements TableRowEstimator {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final String sql;
+
+    public DatabaseTableRowEstimator(EntityManagerFactory emf) {
+        Dialect dialect = emf.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.sql = dialect instanceof H2Dialect
+                ? "select row_count_estimate from information_schema.tables"
+                + " where table_schema = schema() and table_name = upper(?1)"
+                : null;
+    }
+
+    @Override
+    public OptionalLong estimate(String table) {
+        if (sql == null) {
+            return OptionalLong.empty();
+        }
+        // 네이티브 쿼리는 기본으로 영속성 컨텍스트 전체를 flush 하므로 막는다.
+        List<?> result = em.createNativeQuery(sql)
+                .setParameter(1, table)
+                .setFlushMode(FlushModeType.COMMIT)
+                .getResultList();
+        return result.isEmpty() ? OptionalLong.empty() : OptionalLong.of(((Number) result.get(0)).longValue());
+    }
+}
@@ -0,0 +1,141 @@
+package study.datajpa.repository.support;
+
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 선택 조건들로 만드는 조회 쿼리. 값이 null(컬렉션은 비어 있으면)인 조건은 추가하지 않는다.
+ * 엔티티 별칭은 e, 경로는 team.name 처럼 쓴다.
+ * <p>
+ * 어떤 조건이 들어갔는지(경로 + 연산자)만으로 모양(shape)을 정한다. 모양이 같으면 값이 달라도 같은 JPQL 을 쓰므로
+ * {@link DynamicQueryExecutor} 가 모양별로 만든 JPQL 을 재사용하고, Hibernate 쿼리 플랜 캐시도 적중한다.
+ */
+public class DynamicQuery<T> {
+
+    enum Operator {
+        EQ("%s = :%s"),
+        EQ_IGNORE_CASE("lower(%s) = lower(:%s)"),
+        LIKE("%s like :%s escape '\\'"),
+        LIKE_IGNORE_CASE("lower(%s) like lower(:%s) escape '\\'"),
+        GOE("%s >= :%s"),
+        LOE("%s <= :%s"),
+        IN("%s in :%s"),
+        IS_NULL("%s is null");
+
+        private final String template;
+
+        Operator(String template) {
+            this.template = template;
+        }
+
+        String render(String path, String parameter) {
+            return String.format(template, "e." + path, parameter);
+        }
+    }
+
+    static class Condition {
+
+        final String path;
+        final Operator operator;
+        final Object value;
+
+        Condition(String path, Operator operator, Object value) {
+            this.path = path;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        String shape() {
+            return path + " " + operator;
+        }
+    }
+
+    private final Class<T> entityType;
+    private final List<Condition> conditions = new ArrayList<>();
+    private boolean any;
+
+    private DynamicQuery(Class<T> entityType) {
+        this.entityType = entityType;
+    }
+
+    public static <T> DynamicQuery<T> from(Class<T> entityType) {
+        return new DynamicQuery<>(entityType);
+    }
+
+    public DynamicQuery<T> eq(String path, Object value) {
+        return add(path, Operator.EQ, value);
+    }
+
+    public DynamicQuery<T> eqIgnoreCase(String path, String value) {
+        return add(path, Operator.EQ_IGNORE_CASE, value);
+    }
+
+    public DynamicQuery<T> startsWith(String path, String value) {
+        return add(path, Operator.LIKE, value == null ? null : escape(value) + "%");
+    }
+
+    // pattern 은 % 를 포함한 like 패턴. 값에 들어 있는 %, _ 는 escape() 로 이스케이프해서 넘긴다.
+    public DynamicQuery<T> like(String path, String pattern, boolean ignoreCase) {
+        return add(path, ignoreCase ? Operator.LIKE_IGNORE_CASE : Operator.LIKE, pattern);
+    }
+
+    public DynamicQuery<T> goe(String path, Comparable<?> value) {
+        return add(path, Operator.GOE, value);
+    }
+
+    public DynamicQuery<T> loe(String path, Comparable<?> value) {
+        return add(path, Operator.LOE, value);
+    }
+
+    public DynamicQuery<T> in(String path, Collection<?> values) {
+        return add(path, Operator.IN, values == null || values.isEmpty() ? null : values);
+    }
+
+    public DynamicQuery<T> isNull(String path) {
+        conditions.add(new Condition(path, Operator.IS_NULL, null));
+        return this;
+    }
+
+    // 조건을 and 대신 or 로 묶는다.
+    public DynamicQuery<T> matchAny() {
+        this.any = true;
+        return this;
+    }
+
+    private DynamicQuery<T> add(String path, Operator operator, Object value) {
+        if (value != null) {
+            conditions.add(new Condition(path, operator, value));
+        }
+        return this;
+    }
+
+    public static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    Class<T> getEntityType() {
+        return entityType;
+    }
+
+    boolean isAny() {
+        return any;
+    }
+
+    // 추가한 순서와 상관없이 같은 조건 조합이면 같은 모양이 되도록 정렬한다.
+    List<Condition> normalizedConditions() {
+        List<Condition> sorted = new ArrayList<>(conditions);
+        sorted.sort(Comparator.comparing(Condition::shape));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    String shapeKey(Sort sort) {
+        StringBuilder key = new StringBuilder(entityType.getName()).append(any ? " any" : " all");
+        normalizedConditions().forEach(condition -> key.append('|').append(condition.shape()));
+        return key.append('|').append(sort).toString();
+    }
+}
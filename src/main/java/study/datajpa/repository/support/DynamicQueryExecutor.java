@@ -0,0 +1,197 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.ExampleMatcher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.ExampleMatcherAccessor;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.data.util.DirectFieldAccessFallbackBeanWrapper;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.SingularAttribute;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link DynamicQuery} 와 {@link Example} 을 모양(shape)별로 한 번만 JPQL 로 만들어 캐시해 두고, 호출 때는 파라미터만 바인딩한다.
+ * 같은 JPQL 문자열을 쓰므로 Hibernate 의 쿼리 플랜(HQL 파싱, SQL 생성)도 매번 캐시에서 가져온다.
+ * 모양 캐시 적중률은 datajpa.dynamic.query.shapes(result=hit|miss) 로 확인한다.
+ */
+@Component
+public class DynamicQueryExecutor {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final Map<String, CompiledShape> shapes = new ConcurrentHashMap<>();
+    private final int maxShapes;
+    private final Counter hits;
+    private final Counter misses;
+
+    public DynamicQueryExecutor(MeterRegistry meterRegistry,
+                                @Value("${datajpa.dynamic-query.max-shapes:1000}") int maxShapes) {
+        this.maxShapes = maxShapes;
+        this.hits = meterRegistry.counter("datajpa.dynamic.query.shapes", "result", "hit");
+        this.misses = meterRegistry.counter("datajpa.dynamic.query.shapes", "result", "miss");
+        Gauge.builder("datajpa.dynamic.query.shapes.hit.ratio", this, DynamicQueryExecutor::getHitRatio)
+                .register(meterRegistry);
+        Gauge.builder("datajpa.dynamic.query.shapes.size", shapes, Map::size)
+                .register(meterRegistry);
+    }
+
+    public <T> List<T> list(DynamicQuery<T> query, Sort sort) {
+        List<DynamicQuery.Condition> conditions = query.normalizedConditions();
+        CompiledShape shape = compile(query, conditions, sort);
+        return bind(em.createQuery(shape.jpql, query.getEntityType()), conditions).getResultList();
+    }
+
+    public <T> Page<T> page(DynamicQuery<T> query, Pageable pageable) {
+        List<DynamicQuery.Condition> conditions = query.normalizedConditions();
+        CompiledShape shape = compile(query, conditions, pageable.getSort());
+        TypedQuery<T> contentQuery = bind(em.createQuery(shape.jpql, query.getEntityType()), conditions);
+        if (pageable.isPaged()) {
+            contentQuery.setFirstResult((int) pageable.getOffset())
+                    .setMaxResults(pageable.getPageSize());
+        }
+        return PageableExecutionUtils.getPage(contentQuery.getResultList(), pageable,
+                () -> bind(em.createQuery(shape.countJpql, Long.class), conditions).getSingleResult());
+    }
+
+    public <T> List<T> list(Example<T> example) {
+        return list(toQuery(example), Sort.unsorted());
+    }
+
+    public double getHitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private CompiledShape compile(DynamicQuery<?> query, List<DynamicQuery.Condition> conditions, Sort sort) {
+        String key = query.shapeKey(sort);
+        CompiledShape shape = shapes.get(key);
+        if (shape != null) {
+            hits.increment();
+            return shape;
+        }
+        misses.increment();
+
+        String entityName = em.getMetamodel().entity(query.getEntityType()).getName();
+        StringBuilder where = new StringBuilder();
+        for (int i = 0; i < conditions.size(); i++) {
+            where.append(i == 0 ? " where " : query.isAny() ? " or " : " and ")
+                    .append(conditions.get(i).operator.render(conditions.get(i).path, "p" + i));
+        }
+        String jpql = QueryUtils.applySorting("select e from " + entityName + " e" + where, sort, "e");
+        String countJpql = "select count(e) from " + entityName + " e" + where;
+
+        if (shapes.size() >= maxShapes) {
+            shapes.clear();
+        }
+        shape = new CompiledShape(jpql, countJpql);
+        shapes.put(key, shape);
+        return shape;
+    }
+
+    private static <Q extends TypedQuery<?>> Q bind(Q query, List<DynamicQuery.Condition> conditions) {
+        for (int i = 0; i < conditions.size(); i++) {
+            if (conditions.get(i).operator != DynamicQuery.Operator.IS_NULL) {
+                query.setParameter("p" + i, conditions.get(i).value);
+            }
+        }
+        return query;
+    }
+
+    // Spring Data 의 QueryByExamplePredicateBuilder 와 같은 규칙으로 probe 를 조건으로 바꾼다. (단일 값 속성, 연관은 따라 들어간다)
+    private <T> DynamicQuery<T> toQuery(Example<T> example) {
+        ExampleMatcherAccessor matcher = new ExampleMatcherAccessor(example.getMatcher());
+        DynamicQuery<T> query = DynamicQuery.from(example.getProbeType());
+        if (example.getMatcher().isAnyMatching()) {
+            query.matchAny();
+        }
+        addConditions(query, em.getMetamodel().managedType(example.getProbeType()), example.getProbe(), "", matcher);
+        return query;
+    }
+
+    private void addConditions(DynamicQuery<?> query, ManagedType<?> type, Object probe, String prefix,
+                               ExampleMatcherAccessor matcher) {
+        DirectFieldAccessFallbackBeanWrapper wrapper = new DirectFieldAccessFallbackBeanWrapper(probe);
+        for (SingularAttribute<?, ?> attribute : type.getSingularAttributes()) {
+            String path = prefix + attribute.getName();
+            if (matcher.isIgnoredPath(path)) {
+                continue;
+            }
+
+            Object value = matcher.getValueTransformerForPath(path)
+                    .apply(Optional.ofNullable(wrapper.getPropertyValue(attribute.getName())))
+                    .orElse(null);
+            if (value == null) {
+                if (matcher.getNullHandler() == ExampleMatcher.NullHandler.INCLUDE) {
+                    query.isNull(path);
+                }
+                continue;
+            }
+
+            if (attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.MANY_TO_ONE
+                    || attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.ONE_TO_ONE
+                    || attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.EMBEDDED) {
+                addConditions(query, em.getMetamodel().managedType(attribute.getJavaType()), value, path + ".", matcher);
+            } else if (value instanceof String) {
+                addStringCondition(query, path, (String) value, matcher);
+            } else {
+                query.eq(path, value);
+            }
+        }
+    }
+
+    private static void addStringCondition(DynamicQuery<?> query, String path, String value, ExampleMatcherAccessor matcher) {
+        boolean ignoreCase = matcher.isIgnoreCaseForPath(path);
+        String escaped = DynamicQuery.escape(value);
+        switch (matcher.getStringMatcherForPath(path)) {
+            case STARTING:
+                query.like(path, escaped + "%", ignoreCase);
+                break;
+            case ENDING:
+                query.like(path, "%" + escaped, ignoreCase);
+                break;
+            case CONTAINING:
+                query.like(path, "%" + escaped + "%", ignoreCase);
+                break;
+            case DEFAULT:
+            case EXACT:
+                if (ignoreCase) {
+                    query.eqIgnoreCase(path, value);
+                } else {
+                    query.eq(path, value);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported string matcher for " + path + ": "
+                        + matcher.getStringMatcherForPath(path));
+        }
+    }
+
+    private static class CompiledShape {
+
+        private final String jpql;
+        private final String countJpql;
+
+        CompiledShape(String jpql, String countJpql) {
+            this.jpql = jpql;
+            this.countJpql = countJpql;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package study.datajpa.repository.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 요청 하나 동안 쓰는 id 조회 로더. (DataLoader 방식)
+ * load() 는 바로 조회하지 않고 id 를 모아 두었다가 dispatch() 때 한 번의 다건 조회로 처리한다.
+ * 같은 id 는 요청 안에서 한 번만 조회하고 같은 결과를 나눠 준다. 여러 스레드에서 동시에 load() 해도 된다.
+ * <pre>
+ * EntityDataLoader&lt;Member&gt; members = new EntityDataLoader&lt;&gt;(memberRepository::findAllByIdsBatched, Member::getId);
+ * CompletableFuture&lt;Optional&lt;Member&gt;&gt; a = members.load(1L);
+ * CompletableFuture&lt;Optional&lt;Member&gt;&gt; b = members.load(2L);
+ * members.dispatch();
+ * </pre>
+ */
+public class EntityDataLoader<T> {
+
+    private final Function<Collection<Long>, List<T>> batchLoader;
+    private final Function<T, Long> idOf;
+
+    private final Map<Long, CompletableFuture<Optional<T>>> loaded = new HashMap<>();
+    private final Map<Long, CompletableFuture<Optional<T>>> pending = new LinkedHashMap<>();
+
+    public EntityDataLoader(Function<Collection<Long>, List<T>> batchLoader, Function<T, Long> idOf) {
+        this.batchLoader = batchLoader;
+        this.idOf = idOf;
+    }
+
+    public synchronized CompletableFuture<Optional<T>> load(Long id) {
+        CompletableFuture<Optional<T>> future = loaded.get(id);
+        if (future == null) {
+            future = new CompletableFuture<>();
+            loaded.put(id, future);
+            pending.put(id, future);
+        }
+        return future;
+    }
+
+    // 입력 순서대로, 없는 id 는 빼고 돌려준다.
+    public CompletableFuture<List<T>> loadMany(Collection<Long> ids) {
+        List<CompletableFuture<Optional<T>>> futures = ids.stream()
+                .map(this::load)
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> futures.stream()
+                        .map(CompletableFuture::join)
+                        .filter(Optional::isPresent)
+                        .map(Optional::get)
+                        .collect(Collectors.toList()));
+    }
+
+    // 지금까지 모인 id 를 한 번에 조회해서 대기 중인 future 를 완료한다.
+    public void dispatch() {
+        Map<Long, CompletableFuture<Optional<T>>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
+        List<T> entities;
+        try {
+            entities = batchLoader.apply(new ArrayList<>(batch.keySet()));
+        } catch (RuntimeException e) {
+            // 실패한 id 는 다음 load() 때 다시 조회할 수 있도록 기억하지 않는다.
+            synchronized (this) {
+                batch.keySet().forEach(loaded::remove);
+            }
+            batch.values().forEach(future -> future.completeExceptionally(e));
+            return;
+        }
+
+        Map<Long, T> byId = new HashMap<>();
+        for (T entity : entities) {
+            byId.put(idOf.apply(entity), entity);
+        }
+        batch.forEach((id, future) -> future.complete(Optional.ofNullable(byId.get(id))));
+    }
+}
@@ -0,0 +1,269 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.action.internal.BulkOperationCleanupAction;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
+import org.hibernate.type.VersionType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import study.datajpa.audit.AuditContext;
+import study.datajpa.audit.AuditStamp;
+import study.datajpa.entity.JpaBaseEntity;
+import study.datajpa.outbox.OutboxEventType;
+import study.datajpa.outbox.OutboxWriter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * id 가 정해진 엔티티를 조회/merge 없이 {@link UpsertDialect} 의 upsert 문으로 batch-size 단위 JDBC 배치 저장한다.
+ * <ul>
+ *     <li>청크마다 id IN 조회 한 번으로 이미 있는 행을 찾아 추가/수정 건수를 세고, 수정 불가 컬럼(createTime 등)과 버전을 이어받는다.</li>
+ *     <li>감사 컬럼은 {@link AuditContext}, 버전은 추가면 seed, 수정이면 DB 값의 다음 값으로 채운다.</li>
+ *     <li>SQL 은 세션의 StatementPreparer 로 준비하므로 StatementListener(카운트 캐시 무효화, 메트릭 등)도 그대로 거친다.</li>
+ *     <li>{@link study.datajpa.outbox.OutboxAggregate} 엔티티면 행마다 아웃박스 이벤트(CREATED/UPDATED, 전체 상태)를 남긴다.</li>
+ *     <li>영속성 컨텍스트에 같은 id 의 엔티티가 있으면 분리하고, 커밋 시 2차 캐시/쿼리 캐시를 네이티브 벌크 수정과 같은 방식으로 비운다.</li>
+ * </ul>
+ * 호출자의 트랜잭션 안에서 실행한다. 조회와 upsert 사이에 다른 트랜잭션이 같은 id 를 추가하면 건수는 어긋날 수 있다.
+ * <p>
+ * Dialect 별 upsert 문은 기동 시 정한다. 지원하지 않는 DB 면 빈 생성이 실패한다.
+ */
+@Component
+public class EntityUpserter {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final AuditContext auditContext;
+    private final OutboxWriter outboxWriter;
+    private final int batchSize;
+    private final UpsertDialect upsertDialect;
+
+    public EntityUpserter(EntityManagerFactory emf, AuditContext auditContext, OutboxWriter outboxWriter,
+                          @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}") int batchSize) {
+        this.auditContext = auditContext;
+        this.outboxWriter = outboxWriter;
+        this.batchSize = batchSize;
+        this.upsertDialect = UpsertDialect.of(emf.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect());
+    }
+
+    /**
+     * 엔티티들을 upsert 한다. 일반 저장과 다른 점:
+     * <ul>
+     *     <li>@Version 검사를 하지 않는다. 엔티티의 버전 값과 상관없이 DB 행을 덮어쓰고 버전은 DB 값의 다음 값이 된다. (마지막 쓰기가 이긴다)</li>
+     *     <li>영속성 컨텍스트에 같은 id 의 엔티티가 있으면 분리(evict)한다. 호출자가 들고 있던 그 인스턴스는 준영속이 되어 이후 변경이 저장되지 않으므로 다시 조회해야 한다.</li>
+     *     <li>같은 id 가 여러 번 있으면 마지막 것만 저장한다. 앞의 것들은 감사 컬럼/버전도 채우지 않고 건수, 아웃박스 이벤트에서도 빠진다.</li>
+     * </ul>
+     */
+    public <T> UpsertResult upsertAll(Class<T> entityType, Collection<T> entities) {
+        if (entities.isEmpty()) {
+            return new UpsertResult(0, 0);
+        }
+        SessionImplementor session = em.unwrap(SessionImplementor.class);
+        session.flush();
+
+        Plan plan = new Plan(session, entityType);
+        Map<Object, T> lastById = new LinkedHashMap<>();
+        for (T entity : entities) {
+            lastById.put(plan.idOf(entity), entity);
+        }
+
+        UpsertResult result = new UpsertResult(0, 0);
+        Map<Object, T> chunk = new LinkedHashMap<>();
+        for (Map.Entry<Object, T> entry : lastById.entrySet()) {
+            chunk.put(entry.getKey(), entry.getValue());
+            if (chunk.size() == batchSize) {
+                result = result.plus(plan.upsert(chunk));
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            result = result.plus(plan.upsert(chunk));
+        }
+        session.getActionQueue().addAction(new BulkOperationCleanupAction(session, plan.persister));
+        return result;
+    }
+
+    private class Plan {
+
+        final SessionImplementor session;
+        final AbstractEntityPersister persister;
+        final Type[] types;
+        final String idColumn;
+        final List<Integer> properties = new ArrayList<>();
+        // 기존 행에서 값을 이어받는 속성 (insertable 이지만 updatable 이 아닌 속성)
+        final List<Integer> preserved = new ArrayList<>();
+        final int versionIndex;
+        final String upsertSql;
+
+        Plan(SessionImplementor session, Class<?> entityType) {
+            this.session = session;
+            this.persister = (AbstractEntityPersister) session.getFactory().getMetamodel().entityPersister(entityType);
+            this.types = persister.getPropertyTypes();
+            Assert.isTrue(persister.getIdentifierColumnNames().length == 1, "upsert needs a single id column");
+            this.idColumn = persister.getIdentifierColumnNames()[0];
+            this.versionIndex = persister.isVersioned() ? persister.getVersionProperty() : -1;
+
+            List<String> columns = new ArrayList<>();
+            columns.add(idColumn);
+            boolean[] insertable = persister.getPropertyInsertability();
+            boolean[] updatable = persister.getPropertyUpdateability();
+            for (int i = 0; i < types.length; i++) {
+                String[] propertyColumns = persister.getPropertyColumnNames(i);
+                if (!insertable[i] || types[i].isCollectionType() || propertyColumns.length == 0) {
+                    continue;
+                }
+                properties.add(i);
+                Collections.addAll(columns, propertyColumns);
+                if (!updatable[i] && i != versionIndex) {
+                    preserved.add(i);
+                }
+            }
+            this.upsertSql = upsertDialect.upsert(persister.getTableName(), List.of(idColumn), columns);
+        }
+
+        Object idOf(Object entity) {
+            Object id = persister.getIdentifier(entity, (SharedSessionContractImplementor) session);
+            Assert.notNull(id, "upsert needs entities with an id");
+            return id;
+        }
+
+        // chunk 의 id 는 서로 다르다. (같은 행을 한 배치에서 두 번 쓰면 추가 건수와 이벤트가 어긋난다)
+        <T> UpsertResult upsert(Map<Object, T> chunk) {
+            Map<Object, Object[]> existing = existingRows(chunk.keySet());
+
+            AuditStamp stamp = auditContext.current();
+            JdbcCoordinator jdbc = session.getJdbcCoordinator();
+            PreparedStatement statement = jdbc.getStatementPreparer().prepareStatement(upsertSql);
+            try {
+                for (Map.Entry<Object, T> row : chunk.entrySet()) {
+                    T entity = row.getValue();
+                    Object id = row.getKey();
+                    Object[] current = existing.get(id);
+                    prepare(entity, current, stamp);
+                    Object[] values = bind(statement, id, entity, current);
+                    outboxWriter.entityChanged(session, current == null ? OutboxEventType.CREATED : OutboxEventType.UPDATED,
+                            persister, id, entity, values, null);
+                    statement.addBatch();
+                    detachManaged(id);
+                }
+                statement.executeBatch();
+            } catch (SQLException e) {
+                throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "could not upsert", upsertSql);
+            } finally {
+                jdbc.getLogicalConnection().getResourceRegistry().release(statement);
+                jdbc.afterStatementExecution();
+            }
+            return new UpsertResult(chunk.size() - existing.size(), existing.size());
+        }
+
+        // 감사 컬럼과 버전을 엔티티에도 반영해 호출자가 저장된 값을 볼 수 있게 한다.
+        private void prepare(Object entity, Object[] current, AuditStamp stamp) {
+            if (entity instanceof JpaBaseEntity) {
+                if (current == null) {
+                    ((JpaBaseEntity) entity).markCreated(stamp.getTime(), stamp.getAuditor());
+                } else {
+                    ((JpaBaseEntity) entity).markModified(stamp.getTime(), stamp.getAuditor());
+                }
+            }
+            if (versionIndex >= 0) {
+                VersionType<Object> versionType = versionType();
+                Object version = current == null ? versionType.seed(session)
+                        : versionType.next(current[preserved.size()], session);
+                persister.setPropertyValue(entity, versionIndex, version);
+            }
+        }
+
+        // 저장한 상태를 돌려준다.
+        private Object[] bind(PreparedStatement statement, Object id, Object entity, Object[] current) throws SQLException {
+            Object[] values = persister.getPropertyValues(entity);
+            if (current != null) {
+                for (int p = 0; p < preserved.size(); p++) {
+                    values[preserved.get(p)] = current[p];
+                }
+            }
+            int index = 1;
+            persister.getIdentifierType().nullSafeSet(statement, id, index, session);
+            index += persister.getIdentifierType().getColumnSpan(session.getFactory());
+            for (int i : properties) {
+                types[i].nullSafeSet(statement, values[i], index, session);
+                index += types[i].getColumnSpan(session.getFactory());
+            }
+            return values;
+        }
+
+        // id -> [이어받을 속성 값..., 버전]
+        private Map<Object, Object[]> existingRows(Collection<Object> ids) {
+            List<String> columns = new ArrayList<>();
+            columns.add(idColumn);
+            for (int i : preserved) {
+                Collections.addAll(columns, persister.getPropertyColumnNames(i));
+            }
+            if (versionIndex >= 0) {
+                Collections.addAll(columns, persister.getPropertyColumnNames(versionIndex));
+            }
+            String sql = "select " + String.join(", ", columns) + " from " + persister.getTableName() + " where "
+                    + idColumn + " in (" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+
+            Map<Object, Object[]> rows = new HashMap<>();
+            JdbcCoordinator jdbc = session.getJdbcCoordinator();
+            PreparedStatement statement = jdbc.getStatementPreparer().prepareStatement(sql);
+            try {
+                int index = 1;
+                for (Object id : ids) {
+                    persister.getIdentifierType().nullSafeSet(statement, id, index++, session);
+                }
+                ResultSet resultSet = jdbc.getResultSetReturn().extract(statement);
+                while (resultSet.next()) {
+                    Object id = persister.getIdentifierType().nullSafeGet(resultSet, idColumn, session, null);
+                    Object[] values = new Object[preserved.size() + 1];
+                    for (int p = 0; p < preserved.size(); p++) {
+                        int property = preserved.get(p);
+                        values[p] = types[property].nullSafeGet(resultSet, persister.getPropertyColumnNames(property),
+                                session, null);
+                    }
+                    if (versionIndex >= 0) {
+                        values[preserved.size()] = types[versionIndex].nullSafeGet(resultSet,
+                                persister.getPropertyColumnNames(versionIndex), session, null);
+                    }
+                    rows.put(id, values);
+                }
+            } catch (SQLException e) {
+                throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "could not read existing rows", sql);
+            } finally {
+                jdbc.getLogicalConnection().getResourceRegistry().release(statement);
+                jdbc.afterStatementExecution();
+            }
+            return rows;
+        }
+
+        private void detachManaged(Object id) {
+            Object managed = session.getPersistenceContextInternal().getEntity(session.generateEntityKey((Serializable) id, persister));
+            if (managed != null) {
+                session.evict(managed);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private VersionType<Object> versionType() {
+            return (VersionType<Object>) persister.getVersionType();
+        }
+    }
+}
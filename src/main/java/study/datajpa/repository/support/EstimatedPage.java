@@ -0,0 +1,18 @@
+package study.datajpa.repository.support;
+
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+
+/**
+ * {@link CountMode#ESTIMATED} 로 센 페이지. getTotalElements()/getTotalPages() 는 추정치이므로 "약 N 건" 처럼 보여준다.
+ */
+public class EstimatedPage<T> extends PageImpl<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    public EstimatedPage(List<T> content, Pageable pageable, long estimatedTotal) {
+        super(content, pageable, estimatedTotal);
+    }
+}
@@ -0,0 +1,14 @@
+package study.datajpa.repository.support;
+
+import java.util.Collections;
+import java.util.List;
+
+// merge into member (member_id, age, ...) key (member_id) values (?, ?, ...)
+public class H2UpsertDialect implements UpsertDialect {
+
+    @Override
+    public String upsert(String table, List<String> keyColumns, List<String> columns) {
+        return "merge into " + table + " (" + String.join(", ", columns) + ") key (" + String.join(", ", keyColumns)
+                + ") values (" + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")";
+    }
+}
@@ -0,0 +1,30 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * IntegratorProvider 설정은 하나뿐이므로 HibernatePropertiesCustomizer 마다 앞서 등록된 것에 이어 붙인다.
+ */
+public class HibernateIntegrators {
+
+    private HibernateIntegrators() {
+    }
+
+    public static void append(Map<String, Object> hibernateProperties, Integrator integrator) {
+        IntegratorProvider previous = (IntegratorProvider) hibernateProperties.get(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER);
+        hibernateProperties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, (IntegratorProvider) () -> {
+            List<Integrator> integrators = new ArrayList<>();
+            if (previous != null) {
+                integrators.addAll(previous.getIntegrators());
+            }
+            integrators.add(integrator);
+            return integrators;
+        });
+    }
+}
@@ -0,0 +1,32 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+import java.util.Set;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class IndexAdvice {
+
+    public enum Reason {
+        // 리포지토리 메서드의 조건 컬럼을 앞에 둔 인덱스가 없다.
+        UNINDEXED_PREDICATE,
+        // @Table(indexes) 에 선언했지만 실제 스키마에는 없다. (ddl-auto 를 쓰지 않는 환경 등)
+        DECLARED_NOT_IN_SCHEMA
+    }
+
+    private final Reason reason;
+    private final String table;
+    private final List<String> columns;
+    private final String indexName;
+    // 이 인덱스를 쓰게 될 리포지토리 메서드 (Repository.method)
+    private final Set<String> methods;
+
+    public String ddl() {
+        return "create index " + indexName + " on " + table + " (" + String.join(", ", columns) + ")";
+    }
+}
@@ -0,0 +1,348 @@
+package study.datajpa.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.core.RepositoryInformation;
+import org.springframework.data.repository.query.parser.Part;
+import org.springframework.data.repository.query.parser.PartTree;
+import org.springframework.data.repository.support.Repositories;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 기동 시 리포지토리 쿼리 메서드(메서드 이름 쿼리, @Query, 네임드 쿼리)의 조건/조인 컬럼을 모아
+ * 실제 스키마(JDBC DatabaseMetaData)의 인덱스와 비교하고 빠진 인덱스를 보고한다.
+ * <ul>
+ *     <li>동등 조건 컬럼이 인덱스 앞부분에 (순서 무관) 모두 있거나, 동등 조건이 없으면 범위 조건 컬럼이 첫 컬럼이면 쓸 수 있는 인덱스로 본다.</li>
+ *     <li>@Table(indexes) 에 선언했는데 스키마에 없는 인덱스도 함께 보고한다.</li>
+ *     <li>datajpa.index-advisor.auto-create=true (dev 프로필)이면 제안한 인덱스를 바로 만든다.</li>
+ * </ul>
+ * JPQL 은 where 절의 "별칭.속성 연산자" 와 join 만 보는 단순 분석이므로 함수로 감싼 조건이나 서브쿼리는 놓친다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "datajpa.index-advisor", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class IndexAdvisor {
+
+    private static final Pattern ROOT =
+            Pattern.compile("(?i)\\b(?:from|update(?:\\s+versioned)?)\\s+([\\w.]+)\\s+(?:as\\s+)?(\\w+)");
+    private static final Pattern JOIN = Pattern.compile("(?i)\\bjoin\\s+(?:fetch\\s+)?(\\w+)\\.(\\w+)");
+    private static final Pattern WHERE = Pattern.compile("(?i)\\bwhere\\b");
+    private static final Pattern PREDICATE =
+            Pattern.compile("(?i)\\b(\\w+)\\.(\\w+)\\s*(=|>=|<=|>|<|like\\b|in\\b|between\\b|is\\b)");
+
+    private static final Set<Part.Type> EQUALITY = EnumSet.of(Part.Type.SIMPLE_PROPERTY, Part.Type.IN,
+            Part.Type.IS_NULL, Part.Type.TRUE, Part.Type.FALSE);
+    private static final Set<Part.Type> RANGE = EnumSet.of(Part.Type.BETWEEN, Part.Type.LESS_THAN,
+            Part.Type.LESS_THAN_EQUAL, Part.Type.GREATER_THAN, Part.Type.GREATER_THAN_EQUAL, Part.Type.BEFORE,
+            Part.Type.AFTER, Part.Type.STARTING_WITH);
+
+    private final ApplicationContext applicationContext;
+    private final SessionFactoryImplementor sessionFactory;
+    private final DataSource dataSource;
+    private final boolean autoCreate;
+
+    public IndexAdvisor(ApplicationContext applicationContext, EntityManagerFactory entityManagerFactory,
+                        DataSource dataSource, @Value("${datajpa.index-advisor.auto-create:false}") boolean autoCreate) {
+        this.applicationContext = applicationContext;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+        this.dataSource = dataSource;
+        this.autoCreate = autoCreate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        List<IndexAdvice> advice = advise();
+        for (IndexAdvice each : advice) {
+            log.warn("index advisor: {} {}({}) used by {} -> {}", each.getReason(), each.getTable(),
+                    String.join(", ", each.getColumns()), each.getMethods(), each.ddl());
+        }
+        if (autoCreate) {
+            create(advice);
+        }
+    }
+
+    public List<IndexAdvice> advise() {
+        Map<String, List<Candidate>> candidates = new TreeMap<>();
+        Map<String, Map<String, List<String>>> declared = new TreeMap<>();
+        Repositories repositories = new Repositories(applicationContext);
+        for (Class<?> domainType : repositories) {
+            RepositoryInformation information = repositories.getRequiredRepositoryInformation(domainType);
+            AbstractEntityPersister persister = persister(domainType);
+            if (persister == null) {
+                continue;
+            }
+            String table = persister.getTableName().toLowerCase(Locale.ROOT);
+            for (Method method : information.getQueryMethods()) {
+                String name = information.getRepositoryInterface().getSimpleName() + "." + method.getName();
+                candidates.computeIfAbsent(table, key -> new ArrayList<>())
+                        .addAll(candidatesOf(method, name, domainType, persister));
+            }
+            Table tableAnnotation = domainType.getAnnotation(Table.class);
+            if (tableAnnotation != null) {
+                for (Index index : tableAnnotation.indexes()) {
+                    List<String> columns = columnList(persister, index.columnList());
+                    declared.computeIfAbsent(table, key -> new LinkedHashMap<>())
+                            .put(StringUtils.hasText(index.name()) ? index.name() : indexName(table, columns), columns);
+                }
+            }
+        }
+
+        Set<String> tables = new TreeSet<>(candidates.keySet());
+        tables.addAll(declared.keySet());
+        Map<String, List<List<String>>> existing = existingIndexes(tables);
+
+        List<IndexAdvice> advice = new ArrayList<>();
+        for (String table : tables) {
+            List<List<String>> indexes = existing.getOrDefault(table, List.of());
+            declared.getOrDefault(table, Map.of()).forEach((name, columns) -> {
+                if (!indexes.contains(columns)) {
+                    advice.add(new IndexAdvice(IndexAdvice.Reason.DECLARED_NOT_IN_SCHEMA, table, columns, name, Set.of()));
+                }
+            });
+            advice.addAll(missing(table, candidates.getOrDefault(table, List.of()), indexes));
+        }
+        return advice;
+    }
+
+    // 컬럼이 많은 후보부터 인덱스로 제안하고, 이미 제안한 인덱스로 쓸 수 있는 후보는 그 제안에 메서드만 더한다.
+    private List<IndexAdvice> missing(String table, List<Candidate> candidates, List<List<String>> indexes) {
+        List<Candidate> sorted = new ArrayList<>(candidates);
+        sorted.sort(Comparator.comparingInt((Candidate candidate) -> candidate.columns().size()).reversed());
+
+        Map<List<String>, Set<String>> suggested = new LinkedHashMap<>();
+        for (Candidate candidate : sorted) {
+            if (indexes.stream().anyMatch(candidate::usableBy)) {
+                continue;
+            }
+            List<String> columns = suggested.keySet().stream().filter(candidate::usableBy).findFirst()
+                    .orElse(candidate.columns());
+            suggested.computeIfAbsent(columns, key -> new TreeSet<>()).add(candidate.method);
+        }
+
+        List<IndexAdvice> advice = new ArrayList<>();
+        suggested.forEach((columns, methods) -> advice.add(new IndexAdvice(IndexAdvice.Reason.UNINDEXED_PREDICATE,
+                table, columns, indexName(table, columns), methods)));
+        return advice;
+    }
+
+    private void create(List<IndexAdvice> advice) {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            for (IndexAdvice each : advice) {
+                statement.execute(each.ddl());
+                log.info("index advisor: created {}", each.getIndexName());
+            }
+        } catch (SQLException e) {
+            log.warn("index advisor: failed to create indexes", e);
+        }
+    }
+
+    private List<Candidate> candidatesOf(Method method, String name, Class<?> domainType, AbstractEntityPersister persister) {
+        Query query = method.getAnnotation(Query.class);
+        if (query != null && query.nativeQuery()) {
+            return List.of();
+        }
+        String jpql = query == null ? null : StringUtils.hasText(query.value()) ? query.value() : namedQuery(query.name());
+        if (jpql == null) {
+            jpql = namedQuery(domainType.getSimpleName() + "." + method.getName());
+        }
+        return jpql != null ? fromJpql(jpql, name, persister) : fromPartTree(method, name, domainType, persister);
+    }
+
+    private List<Candidate> fromPartTree(Method method, String name, Class<?> domainType, AbstractEntityPersister persister) {
+        List<Candidate> result = new ArrayList<>();
+        for (PartTree.OrPart or : new PartTree(method.getName(), domainType)) {
+            Candidate candidate = new Candidate(name);
+            for (Part part : or) {
+                String column = column(persister, part.getProperty().toDotPath());
+                if (column != null && EQUALITY.contains(part.getType())) {
+                    candidate.equality.add(column);
+                } else if (column != null && RANGE.contains(part.getType()) && candidate.range == null) {
+                    candidate.range = column;
+                }
+            }
+            if (!candidate.columns().isEmpty()) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private List<Candidate> fromJpql(String jpql, String name, AbstractEntityPersister persister) {
+        Matcher root = ROOT.matcher(jpql);
+        String entityName = persister.getEntityName();
+        if (!root.find() || !entityName.endsWith(root.group(1))) {
+            return List.of();
+        }
+        String alias = root.group(2);
+        List<Candidate> result = new ArrayList<>();
+
+        Matcher join = JOIN.matcher(jpql);
+        while (join.find()) {
+            if (join.group(1).equals(alias) && isToOne(persister, join.group(2))) {
+                String column = column(persister, join.group(2));
+                if (column != null) {
+                    Candidate candidate = new Candidate(name);
+                    candidate.equality.add(column);
+                    result.add(candidate);
+                }
+            }
+        }
+
+        Matcher where = WHERE.matcher(jpql);
+        if (where.find()) {
+            Candidate candidate = new Candidate(name);
+            Matcher predicate = PREDICATE.matcher(jpql.substring(where.end()));
+            while (predicate.find()) {
+                String column = predicate.group(1).equals(alias) ? column(persister, predicate.group(2)) : null;
+                String operator = predicate.group(3).toLowerCase(Locale.ROOT);
+                if (column == null) {
+                    continue;
+                }
+                if (operator.equals("=") || operator.equals("in") || operator.equals("is")) {
+                    candidate.equality.add(column);
+                } else if (candidate.range == null) {
+                    candidate.range = column;
+                }
+            }
+            if (!candidate.columns().isEmpty()) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isToOne(AbstractEntityPersister persister, String property) {
+        try {
+            return persister.getPropertyType(property).isEntityType();
+        } catch (HibernateException e) {
+            return false;
+        }
+    }
+
+    // 식별자(PK 인덱스가 있다)나 다른 테이블의 컬럼이면 null
+    private static String column(AbstractEntityPersister persister, String path) {
+        if (path.equals(persister.getIdentifierPropertyName())) {
+            return null;
+        }
+        try {
+            String[] columns = persister.getPropertyColumnNames(path);
+            return columns.length == 1 ? columns[0].toLowerCase(Locale.ROOT) : null;
+        } catch (HibernateException e) {
+            return null;
+        }
+    }
+
+    private String namedQuery(String name) {
+        if (!StringUtils.hasText(name)) {
+            return null;
+        }
+        // 연결은 쿼리를 실행할 때 얻으므로 세션을 여는 것만으로는 커넥션을 쓰지 않는다.
+        try (Session session = sessionFactory.openSession()) {
+            return session.createNamedQuery(name).getQueryString();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private AbstractEntityPersister persister(Class<?> domainType) {
+        try {
+            return (AbstractEntityPersister) sessionFactory.getMetamodel().entityPersister(domainType);
+        } catch (HibernateException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    // 테이블별 인덱스 컬럼 목록 (소문자, 인덱스 내 순서대로). PK 인덱스도 포함한다.
+    private Map<String, List<List<String>>> existingIndexes(Set<String> tables) {
+        Map<String, List<List<String>>> result = new HashMap<>();
+        try (Connection connection = dataSource.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (String table : tables) {
+                String tableName = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+                Map<String, SortedMap<Short, String>> indexes = new LinkedHashMap<>();
+                try (ResultSet resultSet = metaData.getIndexInfo(connection.getCatalog(), null, tableName, false, true)) {
+                    while (resultSet.next()) {
+                        String indexName = resultSet.getString("INDEX_NAME");
+                        String column = resultSet.getString("COLUMN_NAME");
+                        if (indexName != null && column != null) {
+                            indexes.computeIfAbsent(indexName, key -> new TreeMap<>())
+                                    .put(resultSet.getShort("ORDINAL_POSITION"), column.toLowerCase(Locale.ROOT));
+                        }
+                    }
+                }
+                result.put(table, indexes.values().stream().map(columns -> new ArrayList<>(columns.values()))
+                        .collect(Collectors.toList()));
+            }
+        } catch (SQLException e) {
+            log.warn("index advisor: failed to read index metadata", e);
+        }
+        return result;
+    }
+
+    // columnList 는 논리 이름이다. 속성 이름과 같으면(updateTime 등) 네이밍 전략을 거친 실제 컬럼 이름으로 바꾼다.
+    private static List<String> columnList(AbstractEntityPersister persister, String columnList) {
+        return Arrays.stream(columnList.split(","))
+                .map(column -> column.trim().split("\\s+")[0])
+                .map(column -> {
+                    String physical = column(persister, column);
+                    return physical != null ? physical : column.toLowerCase(Locale.ROOT);
+                })
+                .collect(Collectors.toList());
+    }
+
+    private static String indexName(String table, List<String> columns) {
+        return "idx_" + table + "_" + String.join("_", columns);
+    }
+
+    private static class Candidate {
+
+        final String method;
+        final Set<String> equality = new LinkedHashSet<>();
+        String range;
+
+        Candidate(String method) {
+            this.method = method;
+        }
+
+        // 동등 조건 컬럼 뒤에 첫 범위 조건 컬럼
+        List<String> columns() {
+            List<String> columns = new ArrayList<>(equality);
+            if (range != null && !equality.contains(range)) {
+                columns.add(range);
+            }
+            return columns;
+        }
+
+        boolean usableBy(List<String> index) {
+            if (equality.isEmpty()) {
+                return range != null && !index.isEmpty() && index.get(0).equals(range);
+            }
+            return index.size() >= equality.size() && new HashSet<>(index.subList(0, equality.size())).equals(equality);
+        }
+    }
+}
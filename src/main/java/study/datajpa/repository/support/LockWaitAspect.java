@@ -0,0 +1,35 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Component;
+
+/**
+ * @Lock 이 붙은 리포지토리 메서드(비관적 락 조회)의 실행 시간을 datajpa.lock.wait(method, mode) 로 기록한다.
+ * 락 조회의 실행 시간은 대부분 다른 트랜잭션이 락을 놓기를 기다리는 시간이다.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class LockWaitAspect {
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("this(org.springframework.data.repository.Repository) && @annotation(lock)")
+    public Object recordLockWait(ProceedingJoinPoint joinPoint, Lock lock) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            sample.stop(meterRegistry.timer("datajpa.lock.wait",
+                    "method", ((MethodSignature) joinPoint.getSignature()).getMethod().getName(),
+                    "mode", lock.value().name()));
+        }
+    }
+}
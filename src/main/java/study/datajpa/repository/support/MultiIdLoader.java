@@ -0,0 +1,48 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * 여러 id 를 batch-size 단위의 IN 쿼리로 나눠 한 번에 조회한다.
+ * 이미 영속성 컨텍스트에 있는 엔티티는 다시 조회하지 않고, 결과는 입력한 id 순서(중복 제거, 없는 id 제외)로 돌려준다.
+ */
+@Component
+public class MultiIdLoader {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private final int batchSize;
+
+    public MultiIdLoader(@Value("${datajpa.multi-get.batch-size:500}") int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public <T> List<T> findAll(Class<T> entityType, Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<T> loaded = em.unwrap(Session.class)
+                .byMultipleIds(entityType)
+                .withBatchSize(batchSize)
+                .enableSessionCheck(true)
+                .enableOrderedReturn(true)
+                .multiLoad(distinctIds);
+        return loaded.stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+}
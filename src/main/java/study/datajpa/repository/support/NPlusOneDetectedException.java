@@ -0,0 +1,19 @@
+package study.datajpa.repository.support;
+
+import java.util.List;
+
+public class NPlusOneDetectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<QueryScope.Finding> findings;
+
+    public NPlusOneDetectedException(String scope, List<QueryScope.Finding> findings) {
+        super("N+1 select detected in " + scope + ": " + findings);
+        this.findings = findings;
+    }
+
+    public List<QueryScope.Finding> getFindings() {
+        return findings;
+    }
+}
@@ -0,0 +1,106 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 열려 있는 {@link QueryScope} 마다 SQL 을 모양(리터럴, IN 목록 길이를 지운 형태)별로 세고,
+ * 같은 모양의 select 가 threshold 번 이상이면 N+1 로 보고 로그/메트릭을 남긴다.
+ * fail-fast 이면 스코프를 닫을 때 {@link NPlusOneDetectedException} 을 던진다.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "datajpa.n-plus-one", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class NPlusOneDetector implements StatementListener {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private final ThreadLocal<Deque<QueryScope>> scopes = ThreadLocal.withInitial(ArrayDeque::new);
+    private final MeterRegistry meterRegistry;
+    private final int threshold;
+    private final boolean failFast;
+
+    public NPlusOneDetector(MeterRegistry meterRegistry,
+                            @Value("${datajpa.n-plus-one.threshold:3}") int threshold,
+                            @Value("${datajpa.n-plus-one.fail-fast:false}") boolean failFast) {
+        this.meterRegistry = meterRegistry;
+        this.threshold = threshold;
+        this.failFast = failFast;
+    }
+
+    public QueryScope open(String name) {
+        return open("manual", name);
+    }
+
+    QueryScope open(String kind, String name) {
+        QueryScope scope = new QueryScope(kind, name, this);
+        scopes.get().push(scope);
+        return scope;
+    }
+
+    boolean isInside(String kind) {
+        for (QueryScope scope : scopes.get()) {
+            if (scope.getKind().equals(kind)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        Deque<QueryScope> openScopes = scopes.get();
+        if (openScopes.isEmpty()) {
+            return;
+        }
+
+        String shape = shapeOf(sql);
+        boolean select = shape.regionMatches(true, 0, "select", 0, 6);
+        for (QueryScope scope : openScopes) {
+            scope.record(shape, select);
+        }
+    }
+
+    void close(QueryScope scope) {
+        Deque<QueryScope> openScopes = scopes.get();
+        openScopes.remove(scope);
+        if (openScopes.isEmpty()) {
+            scopes.remove();
+        }
+
+        List<QueryScope.Finding> findings = scope.getFindings();
+        if (findings.isEmpty()) {
+            return;
+        }
+
+        meterRegistry.counter("datajpa.nplusone.detected", "scope", scope.getKind()).increment(findings.size());
+        for (QueryScope.Finding finding : findings) {
+            log.warn("N+1 select suspected in {} ({} statements): {}", scope.getName(), scope.getStatementCount(), finding);
+        }
+        if (failFast) {
+            throw new NPlusOneDetectedException(scope.getName(), findings);
+        }
+    }
+
+    static String shapeOf(String sql) {
+        String shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        return IN_LIST.matcher(shape).replaceAll("(?)");
+    }
+}
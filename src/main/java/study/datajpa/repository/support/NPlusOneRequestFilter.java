@@ -0,0 +1,36 @@
+package study.datajpa.repository.support;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * HTTP 요청 하나를 {@link QueryScope} 로 감싼다. 리포지토리가 돌려준 엔티티의 지연 로딩은 리포지토리 밖에서 일어나므로 요청 단위로 잡는다.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "datajpa.n-plus-one", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class NPlusOneRequestFilter extends OncePerRequestFilter {
+
+    private final NPlusOneDetector detector;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryScope scope = detector.open("http", request.getMethod() + " " + request.getRequestURI());
+        try {
+            filterChain.doFilter(request, response);
+        } catch (Throwable ex) {
+            scope.closeAfter(ex);
+            throw ex;
+        }
+        scope.close();
+    }
+}
@@ -0,0 +1,105 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import javax.persistence.OptimisticLockException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 수정 작업을 트랜잭션으로 실행하고, 버전 충돌(@Version)로 실패하면 새 트랜잭션에서 처음부터 다시 실행한다.
+ * 재시도 사이에는 지수적으로 늘어나는 대기 시간에 지터를 섞어 충돌한 스레드들이 다시 동시에 몰리지 않도록 한다.
+ * <p>
+ * 재시도마다 다시 읽어야 하므로 작업 안에서 엔티티를 조회해야 하고, 바깥 트랜잭션 안에서 호출하면 안 된다.
+ * <ul>
+ *     <li>datajpa.optimistic.execution (name, outcome=success|exhausted|error): 재시도를 포함한 전체 실행 시간</li>
+ *     <li>datajpa.optimistic.attempts (name): 실행 한 번에 든 시도 횟수</li>
+ *     <li>datajpa.optimistic.conflicts (name): 버전 충돌 횟수</li>
+ * </ul>
+ */
+@Slf4j
+@Component
+public class OptimisticRetryExecutor {
+
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+
+    public OptimisticRetryExecutor(PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${datajpa.optimistic-retry.max-attempts:5}") int maxAttempts,
+                                   @Value("${datajpa.optimistic-retry.initial-backoff:10ms}") Duration initialBackoff,
+                                   @Value("${datajpa.optimistic-retry.max-backoff:200ms}") Duration maxBackoff) {
+        Assert.isTrue(maxAttempts > 0, "maxAttempts must be positive");
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoff.toMillis();
+        this.maxBackoffMillis = maxBackoff.toMillis();
+    }
+
+    public <T> T execute(String name, Supplier<T> action) {
+        Assert.state(!TransactionSynchronizationManager.isActualTransactionActive(),
+                "optimistic retry must start its own transaction for every attempt");
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        int attempt = 0;
+        try {
+            while (true) {
+                attempt++;
+                try {
+                    T result = transactionTemplate.execute(status -> action.get());
+                    outcome = "success";
+                    return result;
+                } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                    meterRegistry.counter("datajpa.optimistic.conflicts", "name", name).increment();
+                    if (attempt >= maxAttempts) {
+                        outcome = "exhausted";
+                        throw e;
+                    }
+                    log.debug("version conflict on {} (attempt {}/{})", name, attempt, maxAttempts);
+                    backoff(attempt);
+                }
+            }
+        } finally {
+            sample.stop(meterRegistry.timer("datajpa.optimistic.execution", "name", name, "outcome", outcome));
+            DistributionSummary.builder("datajpa.optimistic.attempts")
+                    .tag("name", name)
+                    .register(meterRegistry)
+                    .record(attempt);
+        }
+    }
+
+    public void run(String name, Runnable action) {
+        execute(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // full jitter: 0 ~ min(max, initial * 2^(attempt-1))
+    private void backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+        long sleep = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while backing off", e);
+        }
+    }
+}
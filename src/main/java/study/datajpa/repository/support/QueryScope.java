@@ -0,0 +1,98 @@
+package study.datajpa.repository.support;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 하나의 측정 구간(리포지토리 호출, HTTP 요청, 테스트 블록)에서 실행된 SQL 을 모양별로 센다.
+ * try-with-resources 로 열고 닫는다.
+ */
+public class QueryScope implements AutoCloseable {
+
+    private final String kind;
+    private final String name;
+    private final NPlusOneDetector detector;
+    private final Map<String, Integer> selectCounts = new LinkedHashMap<>();
+    private int statementCount;
+    private boolean closed;
+
+    QueryScope(String kind, String name, NPlusOneDetector detector) {
+        this.kind = kind;
+        this.name = name;
+        this.detector = detector;
+    }
+
+    void record(String shape, boolean select) {
+        statementCount++;
+        if (select) {
+            selectCounts.merge(shape, 1, Integer::sum);
+        }
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    // 같은 모양의 select 가 threshold 번 이상 반복된 것들
+    public List<Finding> getFindings() {
+        List<Finding> findings = new ArrayList<>();
+        selectCounts.forEach((shape, count) -> {
+            if (count >= detector.getThreshold()) {
+                findings.add(new Finding(shape, count));
+            }
+        });
+        return Collections.unmodifiableList(findings);
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            detector.close(this);
+        }
+    }
+
+    // 측정한 호출이 예외로 끝났으면 그 예외를 가리지 않도록 fail-fast 예외는 suppressed 로 붙인다.
+    void closeAfter(Throwable failure) {
+        try {
+            close();
+        } catch (NPlusOneDetectedException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    public static class Finding {
+
+        private final String sql;
+        private final int count;
+
+        Finding(String sql, int count) {
+            this.sql = sql;
+            this.count = count;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return count + "x " + sql;
+        }
+    }
+}
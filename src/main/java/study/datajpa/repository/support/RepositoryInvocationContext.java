@@ -0,0 +1,44 @@
+package study.datajpa.repository.support;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * 현재 스레드에서 실행 중인 가장 바깥 리포지토리 메서드. {@link RepositoryMetricsAspect} 가 열고 닫는다.
+ * JDBC 계층(슬로우 쿼리 로그 등)에서 SQL 을 호출한 리포지토리 메서드를 찾을 때 쓴다.
+ */
+@Component
+public class RepositoryInvocationContext {
+
+    private final ThreadLocal<Invocation> current = new ThreadLocal<>();
+
+    // RepositoryMetricsAspect 가 가장 바깥 호출에서만 부른다.
+    public Invocation enter(String name) {
+        Invocation invocation = new Invocation(name);
+        current.set(invocation);
+        return invocation;
+    }
+
+    public void exit() {
+        current.remove();
+    }
+
+    Invocation current() {
+        return current.get();
+    }
+
+    // 리포지토리 밖에서 실행된 SQL 이면 null
+    public String currentName() {
+        Invocation invocation = current.get();
+        return invocation == null ? null : invocation.name;
+    }
+
+    public static class Invocation {
+
+        final String name;
+        int statements;
+
+        Invocation(String name) {
+            this.name = name;
+        }
+    }
+}
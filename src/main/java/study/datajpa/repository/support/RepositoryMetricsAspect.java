@@ -0,0 +1,190 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.repository.Repository;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.ClassUtils;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.BaseStream;
+
+/**
+ * Spring Data 리포지토리와 @Repository 클래스(MemberJpaRepository 등)를 같은 기준으로 계측한다.
+ * <ul>
+ *     <li>spring.data.repository.invocations(repository, method, state, exception) - 호출 시간. Boot 기본 계측과 이름/태그를 맞췄다.</li>
+ *     <li>datajpa.repository.rows - 반환한 행 수</li>
+ *     <li>datajpa.repository.statements - 호출 중 실행한 SQL 수</li>
+ *     <li>datajpa.transaction.persistence-context.entities - 트랜잭션 종료 시점의 1차 캐시 엔티티 수</li>
+ * </ul>
+ * 리포지토리 안에서 다른 리포지토리를 부르면 바깥 호출에만 집계하고, 성공 경로의 미터는 리포지토리/메서드별로 캐시해 호출당 조회 비용을 줄인다.
+ * 실행 중인 메서드는 {@link RepositoryInvocationContext} 에 남겨 JDBC 계층에서도 볼 수 있게 한다.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect implements StatementListener {
+
+    static final String INVOCATIONS = "spring.data.repository.invocations";
+    static final String ROWS = "datajpa.repository.rows";
+    static final String STATEMENTS = "datajpa.repository.statements";
+    static final String PERSISTENCE_CONTEXT = "datajpa.transaction.persistence-context.entities";
+
+    private final MeterRegistry meterRegistry;
+    private final EntityManagerFactory entityManagerFactory;
+    private final DistributionSummary persistenceContextSize;
+    // CrudRepository.findById 처럼 상속한 메서드는 리포지토리끼리 같은 Method 라서 프록시 클래스별로 나눠 둔다.
+    private final Map<Class<?>, Map<Method, MethodMeters>> meters = new ConcurrentHashMap<>();
+    private final RepositoryInvocationContext invocationContext;
+
+    public RepositoryMetricsAspect(MeterRegistry meterRegistry, EntityManagerFactory entityManagerFactory,
+                                   RepositoryInvocationContext invocationContext) {
+        this.meterRegistry = meterRegistry;
+        this.entityManagerFactory = entityManagerFactory;
+        this.invocationContext = invocationContext;
+        this.persistenceContextSize = DistributionSummary.builder(PERSISTENCE_CONTEXT)
+                .baseUnit("entities")
+                .register(meterRegistry);
+    }
+
+    @Around("this(org.springframework.data.repository.Repository) || @within(org.springframework.stereotype.Repository)")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (invocationContext.current() != null) {
+            return joinPoint.proceed();
+        }
+
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        MethodMeters methodMeters = meters.computeIfAbsent(joinPoint.getThis().getClass(), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, key -> new MethodMeters(repositoryType(joinPoint), key));
+        watchPersistenceContext();
+
+        RepositoryInvocationContext.Invocation invocation = invocationContext.enter(methodMeters.name);
+        long start = System.nanoTime();
+        try {
+            Object result = joinPoint.proceed();
+            methodMeters.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            int rows = rowsOf(method, result);
+            if (rows >= 0) {
+                methodMeters.rows.record(rows);
+            }
+            return result;
+        } catch (Throwable ex) {
+            Timer.builder(INVOCATIONS)
+                    .tags("repository", methodMeters.repository, "method", method.getName(),
+                            "state", "ERROR", "exception", ex.getClass().getSimpleName())
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw ex;
+        } finally {
+            invocationContext.exit();
+            methodMeters.statements.record(invocation.statements);
+        }
+    }
+
+    @Override
+    public void onStatement(String sql) {
+        RepositoryInvocationContext.Invocation invocation = invocationContext.current();
+        if (invocation != null) {
+            invocation.statements++;
+        }
+    }
+
+    // 트랜잭션마다 한 번만 등록해 커밋/롤백 직전에 1차 캐시 크기를 기록한다.
+    private void watchPersistenceContext() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCompletion() {
+                EntityManagerHolder holder =
+                        (EntityManagerHolder) TransactionSynchronizationManager.getResource(entityManagerFactory);
+                if (holder != null) {
+                    persistenceContextSize.record(holder.getEntityManager().unwrap(SessionImplementor.class)
+                            .getPersistenceContextInternal().getNumberOfManagedEntities());
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(RepositoryMetricsAspect.this);
+            }
+        });
+    }
+
+    // 행 수로 볼 수 없는 반환(개수, 스트림, 커서 등)은 -1 로 기록하지 않는다.
+    private static int rowsOf(Method method, Object result) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class || ClassUtils.isPrimitiveOrWrapper(returnType)
+                || Number.class.isAssignableFrom(returnType) || BaseStream.class.isAssignableFrom(returnType)
+                || AutoCloseable.class.isAssignableFrom(returnType) || Future.class.isAssignableFrom(returnType)) {
+            return -1;
+        }
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return 1;
+    }
+
+    // Spring Data 프록시는 선언 타입이 CrudRepository 등이므로 사용자 리포지토리 인터페이스를 찾는다.
+    private static String repositoryType(ProceedingJoinPoint joinPoint) {
+        for (Class<?> candidate : ClassUtils.getAllInterfaces(joinPoint.getThis())) {
+            if (Repository.class.isAssignableFrom(candidate) && !candidate.getName().startsWith("org.springframework")) {
+                return candidate.getSimpleName();
+            }
+        }
+        return ClassUtils.getUserClass(joinPoint.getTarget()).getSimpleName();
+    }
+
+    private class MethodMeters {
+
+        final String repository;
+        final String name;
+        final Timer success;
+        final DistributionSummary rows;
+        final DistributionSummary statements;
+
+        MethodMeters(String repository, Method method) {
+            this.repository = repository;
+            this.name = repository + "." + method.getName();
+            this.success = Timer.builder(INVOCATIONS)
+                    .tags("repository", repository, "method", method.getName(), "state", "SUCCESS", "exception", "None")
+                    .register(meterRegistry);
+            this.rows = DistributionSummary.builder(ROWS)
+                    .baseUnit("rows")
+                    .tags("repository", repository, "method", method.getName())
+                    .register(meterRegistry);
+            this.statements = DistributionSummary.builder(STATEMENTS)
+                    .baseUnit("statements")
+                    .tags("repository", repository, "method", method.getName())
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package study.datajpa.repository.support;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 리포지토리 메서드 호출 하나를 {@link QueryScope} 로 감싼다. 리포지토리 안에서 다른 리포지토리를 부르면 바깥 호출에만 집계한다.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "datajpa.n-plus-one", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class RepositoryQueryScopeAspect {
+
+    static final String KIND = "repository";
+
+    private final NPlusOneDetector detector;
+    // 상속한 CrudRepository 메서드는 리포지토리끼리 같은 Method 라서 프록시 클래스별로 나눠 둔다.
+    private final Map<Class<?>, Map<Method, String>> scopeNames = new ConcurrentHashMap<>();
+
+    @Around("this(org.springframework.data.repository.Repository) || @within(org.springframework.stereotype.Repository)")
+    public Object openScope(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (detector.isInside(KIND)) {
+            return joinPoint.proceed();
+        }
+
+        QueryScope scope = detector.open(KIND, scopeName(joinPoint));
+        Object result;
+        try {
+            result = joinPoint.proceed();
+        } catch (Throwable ex) {
+            scope.closeAfter(ex);
+            throw ex;
+        }
+        scope.close();
+        return result;
+    }
+
+    private String scopeName(ProceedingJoinPoint joinPoint) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        return scopeNames.computeIfAbsent(joinPoint.getThis().getClass(), key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, key -> repositoryType(joinPoint).getSimpleName() + "." + key.getName());
+    }
+
+    // Spring Data 프록시는 선언 타입이 CrudRepository 등이므로 사용자 리포지토리 인터페이스를 찾는다.
+    private static Class<?> repositoryType(ProceedingJoinPoint joinPoint) {
+        for (Class<?> candidate : ClassUtils.getAllInterfaces(joinPoint.getThis())) {
+            if (Repository.class.isAssignableFrom(candidate) && !candidate.getName().startsWith("org.springframework")) {
+                return candidate;
+            }
+        }
+        return ClassUtils.getUserClass(joinPoint.getTarget());
+    }
+}
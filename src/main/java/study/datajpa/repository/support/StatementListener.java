@@ -0,0 +1,10 @@
+package study.datajpa.repository.support;
+
+/**
+ * Hibernate 가 JDBC 로 보내기 직전의 SQL 을 전달받는다.
+ * 빈으로 등록하면 {@link StatementListenerInspector} 가 모아서 호출한다.
+ */
+public interface StatementListener {
+
+    void onStatement(String sql);
+}
@@ -0,0 +1,47 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Component
+public class StatementListenerInspector implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ObjectProvider<StatementListener> listenerProvider;
+    private volatile List<StatementListener> listeners;
+
+    public StatementListenerInspector(ObjectProvider<StatementListener> listenerProvider) {
+        this.listenerProvider = listenerProvider;
+    }
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        for (StatementListener listener : listeners()) {
+            listener.onStatement(sql);
+        }
+        return sql;
+    }
+
+    // 리스너가 EntityManagerFactory 에 의존할 수 있으므로 첫 SQL 시점에 가져온다.
+    private List<StatementListener> listeners() {
+        List<StatementListener> result = listeners;
+        if (result == null) {
+            result = listenerProvider.orderedStream().collect(Collectors.toList());
+            listeners = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,12 @@
+package study.datajpa.repository.support;
+
+import java.util.OptionalLong;
+
+/**
+ * 테이블 전체 행 수의 추정치. DB 통계에서 읽으므로 count 보다 싸지만 정확하지 않다.
+ */
+public interface TableRowEstimator {
+
+    // 통계를 읽을 수 없으면 비어 있다.
+    OptionalLong estimate(String table);
+}
@@ -0,0 +1,234 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 회원의 팀이 바뀔 때(추가, 팀 변경, 삭제) team.member_count 를 증감 update 로 맞춘다.
+ * <ul>
+ *     <li>엔티티 값을 쓰지 않고 DB 에서 더하므로 다른 트랜잭션이 같은 팀에 동시에 회원을 넣어도 잃지 않고, 팀 버전도 올리지 않는다.</li>
+ *     <li>증감은 세션별로 모았다가 flush 가 끝날 때 팀마다 한 문장으로 JDBC 배치에 실어 보낸다. (팀 id 순서라 잠금 순서가 일정하다)</li>
+ *     <li>커밋되면 바뀐 팀의 2차 캐시(team, team-members)를 지운다. 캐시된 팀의 memberCount 는 이 update 를 모른다.
+ *     회원이 들고 날 때마다 지워지므로 팀원이 자주 바뀌는 팀은 team 캐시에서 얻는 것이 거의 없다.</li>
+ *     <li>리스너를 거치지 않는 upsert 는 {@link #recount} 로 다시 센다.</li>
+ * </ul>
+ */
+@Component
+public class TeamMemberCounter implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener,
+        FlushEventListener, AutoFlushEventListener, HibernatePropertiesCustomizer {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final String MEMBERS_ROLE = Team.class.getName() + ".members";
+
+    private final Map<SessionImplementor, Changes> pending = new ConcurrentHashMap<>();
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        HibernateIntegrators.append(hibernateProperties, new CounterIntegrator());
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (isMember(event.getPersister())) {
+            changed(event.getSession(), null, teamId(event.getPersister(), event.getState()));
+        }
+    }
+
+    // merge 없이 재부착한 경우처럼 이전 상태가 없으면 알 수 없으므로 건너뛴다.
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (isMember(event.getPersister()) && event.getOldState() != null) {
+            changed(event.getSession(), teamId(event.getPersister(), event.getOldState()),
+                    teamId(event.getPersister(), event.getState()));
+        }
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (isMember(event.getPersister())) {
+            changed(event.getSession(), teamId(event.getPersister(), event.getDeletedState()), null);
+        }
+    }
+
+    // flush 시점에 받아야 같은 트랜잭션 안에서 증감 update 를 보낼 수 있다.
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    // Hibernate 5.4 에서는 아직 추상 메서드라 구현해야 한다.
+    @Deprecated
+    @Override
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    // 기본 flush 리스너 뒤에 붙어 있으므로 이 시점에는 회원 insert/update/delete 가 모두 실행됐다.
+    @Override
+    public void onFlush(FlushEvent event) {
+        apply(event.getSession());
+    }
+
+    @Override
+    public void onAutoFlush(AutoFlushEvent event) {
+        apply(event.getSession());
+    }
+
+    /**
+     * 팀들의 member_count 를 회원 수로 다시 맞춘다. JPQL 벌크 수정이라 team 캐시 영역은 통째로 비워진다.
+     */
+    public int recount(EntityManager em, Collection<Long> teamIds) {
+        if (teamIds.isEmpty()) {
+            return 0;
+        }
+        return em.createQuery("update Team t set t.memberCount ="
+                        + " (select count(m) from Member m where m.team = t) where t.id in :ids")
+                .setParameter("ids", teamIds)
+                .executeUpdate();
+    }
+
+    private boolean isMember(EntityPersister persister) {
+        return persister.getMappedClass() == Member.class;
+    }
+
+    private Long teamId(EntityPersister persister, Object[] state) {
+        Team team = (Team) state[persister.getEntityMetamodel().getPropertyIndex("team")];
+        return team == null ? null : team.getId();
+    }
+
+    private void changed(SessionImplementor session, Long from, Long to) {
+        if (Objects.equals(from, to)) {
+            return;
+        }
+        Changes changes = pending.computeIfAbsent(session, key -> {
+            // flush 밖에서 실행된 변경이 남아 있으면 커밋 직전에 보낸다. 롤백이면 after 에서 버린다.
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) this::apply);
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, s) -> completed(session, success));
+            // 트랜잭션을 끝내지 않고 세션을 닫으면 위 콜백이 불리지 않으므로 세션과 함께 버린다.
+            session.getEventListenerManager().addListener(new BaseSessionEventListener() {
+                @Override
+                public void end() {
+                    pending.remove(session);
+                }
+            });
+            return new Changes();
+        });
+        if (from != null) {
+            changes.add(from, -1);
+        }
+        if (to != null) {
+            changes.add(to, 1);
+        }
+    }
+
+    private void apply(SessionImplementor session) {
+        Changes changes = pending.get(session);
+        if (changes == null || changes.deltas.isEmpty()) {
+            return;
+        }
+        AbstractEntityPersister teamPersister = (AbstractEntityPersister)
+                session.getFactory().getMetamodel().entityPersister(Team.class);
+        String column = teamPersister.getPropertyColumnNames("memberCount")[0];
+        String sql = "update " + teamPersister.getTableName() + " set " + column + " = " + column + " + ?"
+                + " where " + teamPersister.getIdentifierColumnNames()[0] + " = ?";
+
+        JdbcCoordinator jdbc = session.getJdbcCoordinator();
+        PreparedStatement statement = jdbc.getStatementPreparer().prepareStatement(sql);
+        try {
+            for (Map.Entry<Long, Integer> delta : changes.deltas.entrySet()) {
+                if (delta.getValue() == 0) {
+                    continue;
+                }
+                statement.setInt(1, delta.getValue());
+                statement.setLong(2, delta.getKey());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "could not update member count", sql);
+        } finally {
+            jdbc.getLogicalConnection().getResourceRegistry().release(statement);
+            jdbc.afterStatementExecution();
+        }
+        changes.deltas.clear();
+    }
+
+    private void completed(SessionImplementor session, boolean success) {
+        Changes changes = pending.remove(session);
+        if (!success || changes == null) {
+            return;
+        }
+        org.hibernate.Cache cache = session.getFactory().getCache();
+        for (Long teamId : changes.touched) {
+            cache.evictEntityData(Team.class, teamId);
+            cache.evictCollectionData(MEMBERS_ROLE, teamId);
+        }
+    }
+
+    private static class Changes {
+
+        final Map<Long, Integer> deltas = new TreeMap<>();
+        final Set<Long> touched = new HashSet<>();
+
+        void add(Long teamId, int delta) {
+            deltas.merge(teamId, delta, Integer::sum);
+            touched.add(teamId);
+        }
+    }
+
+    private class CounterIntegrator implements Integrator {
+
+        @Override
+        public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory,
+                              SessionFactoryServiceRegistry serviceRegistry) {
+            EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+            registry.appendListeners(EventType.POST_INSERT, TeamMemberCounter.this);
+            registry.appendListeners(EventType.POST_UPDATE, TeamMemberCounter.this);
+            registry.appendListeners(EventType.POST_DELETE, TeamMemberCounter.this);
+            registry.appendListeners(EventType.FLUSH, TeamMemberCounter.this);
+            registry.appendListeners(EventType.AUTO_FLUSH, TeamMemberCounter.this);
+        }
+
+        @Override
+        public void disintegrate(SessionFactoryImplementor sessionFactory,
+                                 SessionFactoryServiceRegistry serviceRegistry) {
+        }
+    }
+}
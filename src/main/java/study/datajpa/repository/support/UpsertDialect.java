@@ -0,0 +1,23 @@
+package study.datajpa.repository.support;
+
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+
+import java.util.List;
+
+/**
+ * 키가 있으면 수정, 없으면 추가하는 한 문장 SQL. 파라미터는 columns 순서대로 한 행 분량이다.
+ * 지원하지 않는 Dialect 면 {@link EntityUpserter} 를 만들 때(기동 시) 실패한다.
+ */
+public interface UpsertDialect {
+
+    String upsert(String table, List<String> keyColumns, List<String> columns);
+
+    static UpsertDialect of(Dialect dialect) {
+        if (dialect instanceof H2Dialect) {
+            return new H2UpsertDialect();
+        }
+        throw new IllegalStateException("EntityUpserter has no upsert statement for " + dialect.getClass().getSimpleName()
+                + " (supported: H2Dialect)");
+    }
+}
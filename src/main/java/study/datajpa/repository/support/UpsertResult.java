@@ -0,0 +1,22 @@
+package study.datajpa.repository.support;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+@Getter
+@ToString
+@RequiredArgsConstructor
+public class UpsertResult {
+
+    private final int inserted;
+    private final int updated;
+
+    public int getTotal() {
+        return inserted + updated;
+    }
+
+    UpsertResult plus(UpsertResult other) {
+        return new UpsertResult(inserted + other.inserted, updated + other.updated);
+    }
+}
@@ -0,0 +1,53 @@
+package study.datajpa.audit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 고정 Clock 으로 트랜잭션 단위 재사용만 확인하므로 스프링 컨텍스트 없이 동기화만 직접 연다.
+ */
+class AuditContextTest {
+
+    private static final Instant NOW = Instant.parse("2021-10-01T10:15:30Z");
+
+    @AfterEach
+    void clear() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void stampIsResolvedOncePerTransaction() {
+        AtomicInteger auditorCalls = new AtomicInteger();
+        AuditContext context = new AuditContext(Clock.fixed(NOW, ZoneOffset.UTC),
+                () -> Optional.of("user" + auditorCalls.incrementAndGet()));
+
+        TransactionSynchronizationManager.initSynchronization();
+        AuditStamp first = context.current();
+        AuditStamp second = context.current();
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getTime()).isEqualTo(LocalDateTime.of(2021, 10, 1, 10, 15, 30));
+        assertThat(first.getAuditor()).isEqualTo("user1");
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(TransactionSynchronizationManager.getResource(context)).isNull();
+        assertThat(context.current().getAuditor()).isEqualTo("user2");
+    }
+}
@@ -0,0 +1,97 @@
+package study.datajpa.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 풀 크기 2 의 인메모리 H2 Hikari 풀을 스레드 8 개로 포화시킨 뒤 조절 결과를 본다. 스케줄러 대신 adjust() 를 직접 부른다.
+ */
+class AdaptivePoolSizerTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    HikariDataSource dataSource;
+    AdaptivePoolSizer sizer;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:adaptive_pool;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+        dataSource.setPoolName("adaptive");
+        dataSource.setMaximumPoolSize(2);
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+        PoolProperties.Adaptive properties = new PoolProperties.Adaptive();
+        properties.setTargetWait(Duration.ofMillis(5));
+        properties.setMinSize(2);
+        properties.setMaxSize(6);
+        properties.setStep(2);
+        properties.setShrinkAfter(2);
+        sizer = new AdaptivePoolSizer(dataSource, meterRegistry, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void growsUnderSaturationAndShrinksWhenQuiet() throws Exception {
+        List<Integer> resized = new ArrayList<>();
+        sizer.addResizeListener(resized::add);
+
+        saturate(8, 20);
+        assertThat(sizer.adjust()).isEqualTo(4);
+
+        saturate(8, 20);
+        assertThat(sizer.adjust()).isEqualTo(6);
+
+        saturate(8, 20);
+        assertThat(sizer.adjust()).isEqualTo(6);
+
+        assertThat(sizer.adjust()).isEqualTo(6);
+        assertThat(sizer.adjust()).isEqualTo(4);
+        assertThat(dataSource.getMaximumPoolSize()).isEqualTo(4);
+        assertThat(resized).containsExactly(4, 6, 4);
+    }
+
+    // 스레드마다 커넥션을 30ms 씩 잡았다 놓기를 반복한다.
+    private void saturate(int threads, int iterations) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < iterations / threads + 1; j++) {
+                        Connection connection = dataSource.getConnection();
+                        try {
+                            Thread.sleep(30);
+                        } finally {
+                            connection.close();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
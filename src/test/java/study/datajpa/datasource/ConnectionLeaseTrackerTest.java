@@ -0,0 +1,61 @@
+package study.datajpa.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import study.datajpa.repository.support.RepositoryInvocationContext;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 누수 판정 주기를 기다리지 않도록 스케줄러는 띄우지 않고 checkLeaks() 를 직접 부른다.
+ */
+class ConnectionLeaseTrackerTest {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RepositoryInvocationContext invocationContext = new RepositoryInvocationContext();
+    ConnectionLeaseTracker tracker = new ConnectionLeaseTracker(Duration.ofMillis(50), meterRegistry, invocationContext);
+    DataSource dataSource = tracker.track(
+            new DriverManagerDataSource("jdbc:h2:mem:lease_tracker;DB_CLOSE_DELAY=-1", "sa", ""));
+
+    @Test
+    public void reportsLeakWithLastRepositoryMethod() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            invocationContext.enter("MemberRepository.findListByUsername");
+            try (Statement statement = connection.createStatement()) {
+                tracker.onStatement("select 1");
+                statement.execute("select 1");
+            } finally {
+                invocationContext.exit();
+            }
+
+            Thread.sleep(60);
+            tracker.checkLeaks();
+            tracker.checkLeaks();
+
+            assertThat(meterRegistry.counter("datajpa.pool.leaks", "method", "MemberRepository.findListByUsername")
+                    .count()).isEqualTo(1);
+            assertThat(tracker.openLeases()).isEqualTo(1);
+        }
+        assertThat(tracker.openLeases()).isZero();
+    }
+
+    @Test
+    public void returnedConnectionIsNotALeak() throws Exception {
+        Connection connection = dataSource.getConnection();
+        try {
+            assertThat(tracker.openLeases()).isEqualTo(1);
+        } finally {
+            connection.close();
+        }
+        Thread.sleep(60);
+        tracker.checkLeaks();
+
+        assertThat(meterRegistry.find("datajpa.pool.leaks").counter()).isNull();
+    }
+}
@@ -0,0 +1,128 @@
+package study.datajpa.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 로컬 인메모리 H2 세 개를 primary 와 replica 로 두고, 각 DB 의 node 테이블에 자기 이름을 넣어 어디로 갔는지 확인한다.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    DriverManagerDataSource primary = node("primary");
+    DriverManagerDataSource replica1 = node("replica1");
+    DriverManagerDataSource replica2 = node("replica2");
+
+    ReadYourWritesTracker tracker = new ReadYourWritesTracker(Duration.ofMillis(200));
+    ReplicaRoutingDataSource routing;
+    JdbcTemplate jdbcTemplate;
+    TransactionTemplate writeTx;
+    TransactionTemplate readOnlyTx;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        replicas.put("replica1", replica1);
+        replicas.put("replica2", replica2);
+        routing = new ReplicaRoutingDataSource(primary, replicas, tracker,
+                Duration.ofHours(1), Duration.ofSeconds(2), "select lag_seconds from replica_status");
+        routing.afterPropertiesSet();
+
+        DataSource dataSource = new LazyConnectionDataSourceProxy(routing);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        writeTx = new TransactionTemplate(transactionManager);
+        readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        routing.destroy();
+        tracker.clear();
+    }
+
+    @Test
+    public void readOnlyTransactionsGoToReplicas() {
+        assertThat(nodeOf(writeTx)).isEqualTo("primary");
+
+        Set<String> nodes = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(nodeOf(readOnlyTx));
+        }
+        assertThat(nodes).containsExactlyInAnyOrder("replica1", "replica2");
+    }
+
+    @Test
+    public void readsStickToPrimaryAfterWrite() throws InterruptedException {
+        tracker.onStatement("insert into member (age, username, member_id) values (?, ?, ?)");
+
+        assertThat(nodeOf(readOnlyTx)).isEqualTo("primary");
+
+        Thread.sleep(300);
+        assertThat(nodeOf(readOnlyTx)).startsWith("replica");
+    }
+
+    @Test
+    public void laggingReplicaIsTakenOutOfRotation() {
+        setLag(replica1, 10);
+        routing.checkHealth();
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(nodeOf(readOnlyTx)).isEqualTo("replica2");
+        }
+
+        setLag(replica1, 0);
+        routing.checkHealth();
+
+        Set<String> nodes = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            nodes.add(nodeOf(readOnlyTx));
+        }
+        assertThat(nodes).contains("replica1");
+    }
+
+    @Test
+    public void fallsBackToPrimaryWhenNoReplicaIsHealthy() {
+        setLag(replica1, 10);
+        setLag(replica2, 10);
+        routing.checkHealth();
+
+        assertThat(nodeOf(readOnlyTx)).isEqualTo("primary");
+    }
+
+    private String nodeOf(TransactionTemplate tx) {
+        return tx.execute(status -> jdbcTemplate.queryForObject("select name from node", String.class));
+    }
+
+    private static void setLag(DataSource replica, double seconds) {
+        new JdbcTemplate(replica).update("update replica_status set lag_seconds = ?", seconds);
+    }
+
+    private static DriverManagerDataSource node(String name) {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:h2:mem:routing_" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table if not exists node (name varchar(20))");
+        jdbcTemplate.execute("create table if not exists replica_status (lag_seconds double)");
+        jdbcTemplate.update("delete from node");
+        jdbcTemplate.update("delete from replica_status");
+        jdbcTemplate.update("insert into node values (?)", name);
+        jdbcTemplate.update("insert into replica_status values (0)");
+        return dataSource;
+    }
+}
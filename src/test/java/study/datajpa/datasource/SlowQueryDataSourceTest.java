@@ -0,0 +1,98 @@
+package study.datajpa.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import study.datajpa.repository.support.RepositoryInvocationContext;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 임계치를 0 으로 두어 모든 SQL 을 슬로우 쿼리로 기록한다. 로컬 인메모리 H2 로 충분하므로 스프링 컨텍스트는 띄우지 않는다.
+ */
+class SlowQueryDataSourceTest {
+
+    DriverManagerDataSource target = new DriverManagerDataSource("jdbc:h2:mem:slow_query;DB_CLOSE_DELAY=-1", "sa", "");
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    SlowQueryLog slowQueryLog;
+    JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        SlowQueryProperties properties = new SlowQueryProperties();
+        properties.setThreshold(Duration.ZERO);
+        properties.setMaxValueLength(5);
+        properties.setRedactColumns(List.of("password"));
+
+        slowQueryLog = new SlowQueryLog(16, target, meterRegistry);
+        jdbcTemplate = new JdbcTemplate(new SlowQueryDataSource(target, slowQueryLog, properties,
+                new RepositoryInvocationContext()));
+
+        JdbcTemplate plain = new JdbcTemplate(target);
+        plain.execute("create table if not exists account (id bigint primary key, username varchar(50), password varchar(50))");
+        plain.update("delete from account");
+    }
+
+    @AfterEach
+    void tearDown() {
+        slowQueryLog.close();
+    }
+
+    @Test
+    public void recordsRedactedBindsRowsAndPlan() throws InterruptedException {
+        jdbcTemplate.update("insert into account (id, username, password) values (?, ?, ?)", 1L, "member1", "secret");
+        jdbcTemplate.update("insert into account (id, username, password) values (?, ?, ?)", 2L, "member2", "secret");
+        jdbcTemplate.queryForList("select username from account where password = ? and id in (?, ?)", "secret", 1L, 2L);
+
+        List<SlowQuery> recorded = awaitRecorded(3);
+
+        SlowQuery insert = recorded.get(0);
+        assertThat(insert.getBinds()).isEqualTo("[1, 'membe...', ****]");
+        assertThat(insert.getRows()).isEqualTo(1);
+        assertThat(insert.getPlan()).isNull();
+
+        SlowQuery select = recorded.get(2);
+        assertThat(select.getBinds()).isEqualTo("[****, 1, 2]");
+        assertThat(select.getRows()).isEqualTo(2);
+        assertThat(select.getPlan()).containsIgnoringCase("account");
+        assertThat(meterRegistry.counter("datajpa.slow-query.recorded").count()).isEqualTo(3);
+    }
+
+    @Test
+    public void findsComparedColumnForEachParameter() {
+        assertThat(BindRedactor.parameterColumns(
+                "update member set age=?, username=? where member_id=? and version=?", 4))
+                .containsExactly("age", "username", "member_id", "version");
+        assertThat(BindRedactor.parameterColumns(
+                "select m.member_id from member m where m.username like ? escape '\\' and m.age>=?", 2))
+                .containsExactly("username", "age");
+    }
+
+    @Test
+    public void masksValuesWhoseColumnIsUnknown() {
+        BindRedactor redactor = new BindRedactor(List.of("password"), 100);
+        Object[] values = {"secret", 1L};
+
+        assertThat(redactor.format("select id from account where lower(password) = ? and id = ?", values, 2))
+                .isEqualTo("[****, 1]");
+        assertThat(redactor.format("select id from account where password = lower(?) and id = ?", values, 2))
+                .isEqualTo("[****, 1]");
+        assertThat(redactor.format("merge into account (password, id) key (id) values (?, ?)", values, 2))
+                .isEqualTo("[****, ****]");
+        assertThat(new BindRedactor(List.of(), 100).format("merge into account (password, id) key (id) values (?, ?)", values, 2))
+                .isEqualTo("['secret', 1]");
+    }
+
+    private List<SlowQuery> awaitRecorded(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && slowQueryLog.recent().size() < count; i++) {
+            Thread.sleep(20);
+        }
+        return slowQueryLog.recent();
+    }
+}
@@ -0,0 +1,231 @@
+package study.datajpa.outbox;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+import study.datajpa.repository.MemberRepository;
+import study.datajpa.repository.TeamRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 이벤트는 커밋 직전에 쓰이므로 트랜잭션을 나눠서 쓴다.
+ * 컨텍스트에는 릴레이가 없으므로(기본값 꺼짐) 테스트 싱크를 붙인 릴레이로 직접 비운다.
+ */
+@SpringBootTest
+class OutboxRelayTest {
+
+    @Autowired
+    OutboxWriter outboxWriter;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    TransactionTemplate tx;
+    InMemoryOutboxSink sink = new InMemoryOutboxSink();
+    OutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (relay != null) {
+            relay.destroy();
+        }
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'outbox%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'outbox%'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void changesAreWrittenWithTheTransactionAndRelayed() {
+        Member saved = tx.execute(status -> {
+            Team team = teamRepository.save(new Team("outboxTeam"));
+            return memberRepository.save(new Member("outboxMember", 9200, team));
+        });
+        tx.executeWithoutResult(status -> memberRepository.findById(saved.getId()).orElseThrow().setAge(9201));
+        memberRepository.bulkAgePlus(9201);
+        tx.executeWithoutResult(status -> {
+            memberRepository.save(new Member("outboxRolledBack", 9200));
+            status.setRollbackOnly();
+        });
+
+        relay = relay(sink, 4);
+        drainAll(relay);
+
+        String memberId = String.valueOf(saved.getId());
+        List<OutboxEvent> memberEvents = published(memberId);
+        assertThat(memberEvents).extracting(OutboxEvent::getEventType)
+                .containsExactly(OutboxEventType.CREATED, OutboxEventType.UPDATED);
+        assertThat(memberEvents).extracting(OutboxEvent::getAggregateVersion).containsExactly(0L, 1L);
+        assertThat(memberEvents.get(0).getPayload())
+                .contains("\"username\":\"outboxMember\"", "\"teamId\":" + saved.getTeam().getId());
+        // 수정은 바뀐 속성만 담는다.
+        assertThat(memberEvents.get(1).getPayload()).isEqualTo("{\"age\":9201}");
+
+        assertThat(sink.getPublished()).anySatisfy(event -> {
+            assertThat(event.getEventType()).isEqualTo(OutboxEventType.BULK_UPDATED);
+            assertThat(event.getPayload()).isEqualTo("{\"set\":\"e.age = e.age + 1\",\"where\":\"e.age = :age\","
+                    + "\"idFrom\":null,\"idTo\":null,\"parameters\":{\"age\":9201}}");
+        });
+        assertThat(sink.getPublished()).noneSatisfy(event ->
+                assertThat(event.getPayload()).contains("outboxRolledBack"));
+        assertThat(remaining()).isZero();
+    }
+
+    @Test
+    public void failedAggregateIsRetriedInOrder() {
+        Member failing = tx.execute(status -> memberRepository.save(new Member("outboxFailing", 9300)));
+        tx.executeWithoutResult(status -> memberRepository.findById(failing.getId()).orElseThrow().setAge(9301));
+        Member other = tx.execute(status -> memberRepository.save(new Member("outboxOther", 9300)));
+
+        String failingId = String.valueOf(failing.getId());
+        AtomicInteger failures = new AtomicInteger();
+        relay = relay(event -> {
+            if (failingId.equals(event.getAggregateId()) && failures.compareAndSet(0, 1)) {
+                throw new IllegalStateException("sink unavailable");
+            }
+            sink.publish(event);
+        }, 2);
+
+        drainAll(relay);
+        // 첫 이벤트가 실패하면 같은 집합체의 다음 이벤트도 그 배치에서는 보내지 않는다.
+        assertThat(published(String.valueOf(other.getId()))).hasSize(1);
+        assertThat(published(failingId)).extracting(OutboxEvent::getEventType)
+                .containsExactly(OutboxEventType.CREATED, OutboxEventType.UPDATED);
+        assertThat(failures.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void failingAggregateDoesNotStallOthers() {
+        Member failing = tx.execute(status -> memberRepository.save(new Member("outboxStuck", 9400)));
+        tx.executeWithoutResult(status -> memberRepository.findById(failing.getId()).orElseThrow().setAge(9401));
+        tx.executeWithoutResult(status -> memberRepository.findById(failing.getId()).orElseThrow().setAge(9402));
+        Member other = tx.execute(status -> memberRepository.save(new Member("outboxBehind", 9400)));
+
+        // 실패하는 집합체의 이벤트만으로 첫 배치가 찬다.
+        String failingId = String.valueOf(failing.getId());
+        relay = relay(event -> {
+            if (failingId.equals(event.getAggregateId())) {
+                throw new IllegalStateException("sink rejects " + failingId);
+            }
+            sink.publish(event);
+        }, 2, 2);
+
+        relay.drain();
+
+        assertThat(published(String.valueOf(other.getId()))).hasSize(1);
+        assertThat(published(failingId)).isEmpty();
+        assertThat(remaining()).isEqualTo(3);
+    }
+
+    @Test
+    public void bulkUpdateIsDeliveredAsBarrier() {
+        Member slow = tx.execute(status -> memberRepository.save(new Member("outboxSlow", 9500)));
+        memberRepository.bulkAgePlus(9500);
+        tx.executeWithoutResult(status -> memberRepository.findById(slow.getId()).orElseThrow().setAge(9600));
+
+        // 앞의 이벤트가 늦게 나가도 벌크 이벤트가 앞지르지 않는다.
+        String slowId = String.valueOf(slow.getId());
+        relay = relay(event -> {
+            if (slowId.equals(event.getAggregateId()) && event.getEventType() == OutboxEventType.CREATED) {
+                sleep(100);
+            }
+            sink.publish(event);
+        }, 4, 100);
+        drainAll(relay);
+
+        List<OutboxEvent> events = sink.getPublished();
+        OutboxEvent bulk = events.stream()
+                .filter(event -> event.getEventType() == OutboxEventType.BULK_UPDATED
+                        && event.getPayload().contains("\"age\":9500"))
+                .findFirst().orElseThrow();
+        int barrier = events.indexOf(bulk);
+        assertThat(events.subList(0, barrier)).extracting(OutboxEvent::getId).allMatch(id -> id < bulk.getId());
+        assertThat(events.subList(barrier + 1, events.size())).extracting(OutboxEvent::getId)
+                .allMatch(id -> id > bulk.getId())
+                .isNotEmpty();
+    }
+
+    @Test
+    public void pendingEventsAreDroppedWhenSessionClosesWithoutCompletion() {
+        int before = outboxWriter.pendingSessions();
+        EntityManager unfinished = emf.createEntityManager();
+        outboxWriter.bulkUpdated(unfinished, Member.class, "e.age = e.age + 1", "e.age = :age", null, null, Map.of("age", 9600));
+        assertThat(outboxWriter.pendingSessions()).isEqualTo(before + 1);
+
+        unfinished.close();
+
+        assertThat(outboxWriter.pendingSessions()).isEqualTo(before);
+    }
+
+    private OutboxRelay relay(OutboxSink target, int parallelism) {
+        return relay(target, parallelism, new OutboxProperties.Relay().getBatchSize());
+    }
+
+    private OutboxRelay relay(OutboxSink target, int parallelism, int batchSize) {
+        OutboxProperties.Relay properties = new OutboxProperties.Relay();
+        properties.setParallelism(parallelism);
+        properties.setBatchSize(batchSize);
+        return new OutboxRelay(emf, transactionManager, target, properties, meterRegistry);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 실패한 집합체는 다음 drain 에서 다시 보내므로 아웃박스가 빌 때까지 돈다.
+    private void drainAll(OutboxRelay relay) {
+        for (int i = 0; i < 100 && remaining() > 0; i++) {
+            relay.drain();
+        }
+    }
+
+    private long remaining() {
+        return tx.execute(status -> em.createQuery("select count(e) from OutboxEvent e", Long.class).getSingleResult());
+    }
+
+    private List<OutboxEvent> published(String aggregateId) {
+        return sink.getPublished().stream()
+                .filter(event -> aggregateId.equals(event.getAggregateId()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,74 @@
+package study.datajpa.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 조회가 다른 스레드에서 실행되므로 저장한 데이터는 커밋되어 있어야 한다. 테스트 전체를 트랜잭션으로 묶지 않는다.
+ */
+@SpringBootTest
+class AsyncRepositoryFacadeTest {
+
+    @Autowired
+    AsyncRepositoryFacade asyncRepositoryFacade;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    EntityManager em;
+
+    @AfterEach
+    void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'async%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'async%'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void fanOutIndependentLookups() {
+        Long memberId = new TransactionTemplate(transactionManager).execute(status -> {
+            Team team = teamRepository.save(new Team("asyncTeam"));
+            return memberRepository.save(new Member("asyncMember", 10, team)).getId();
+        });
+
+        CompletableFuture<String> member = asyncRepositoryFacade.findMemberById(memberId)
+                .thenApply(found -> found.orElseThrow().getUsername());
+        CompletableFuture<Long> teamCount = asyncRepositoryFacade.countTeams();
+
+        assertThat(member.thenCombine(teamCount, (username, count) -> username + ":" + (count > 0)).join())
+                .isEqualTo("asyncMember:true");
+    }
+
+    @Test
+    public void lazyLoadingInsideQuery() {
+        Long memberId = new TransactionTemplate(transactionManager).execute(status -> {
+            Team team = teamRepository.save(new Team("asyncLazyTeam"));
+            return memberRepository.save(new Member("asyncLazyMember", 10, team)).getId();
+        });
+
+        String teamName = asyncRepositoryFacade.query(() ->
+                memberRepository.findById(memberId).orElseThrow().getTeam().getName()).join();
+
+        assertThat(teamName).isEqualTo("asyncLazyTeam");
+    }
+}
@@ -4,12 +4,19 @@ import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.annotation.Rollback;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import study.datajpa.entity.Member;
+import study.datajpa.repository.support.CountMode;
+import study.datajpa.repository.support.EstimatedPage;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
@@ -123,6 +130,70 @@ class MemberJpaRepositoryTest {
         assertThat(aLong).isEqualTo(6L);
     }
 
+    @Test
+    @Rollback
+    public void pagingWithCachedCount() {
+        for (int i = 0; i < 5; i++) {
+            memberJpaRepository.save(new Member("count" + i, 55));
+        }
+        memberJpaRepository.save(new Member("single", 56));
+
+        PageRequest pageRequest = PageRequest.of(0, 2, Sort.by(Sort.Direction.DESC, "username"));
+        Page<Member> page = memberJpaRepository.findPageByAge(55, pageRequest, CountMode.CACHED);
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        assertThat(page.getContent()).extracting(Member::getUsername).containsExactly("count4", "count3");
+
+        // insert 가 flush 되면 캐시된 count 는 무효화된다.
+        memberJpaRepository.save(new Member("count5", 55));
+        entityManager.flush();
+        Page<Member> afterInsert = memberJpaRepository.findPageByAge(55, pageRequest, CountMode.CACHED);
+        assertThat(afterInsert.getTotalElements()).isEqualTo(6);
+
+        // 첫 페이지가 다 차지 않으면 count 쿼리 없이 content 크기가 전체 건수
+        Page<Member> notFull = memberJpaRepository.findPageByAge(56, PageRequest.of(0, 10), CountMode.EXACT);
+        assertThat(notFull.getTotalElements()).isEqualTo(1);
+
+        // 추정 모드는 센 경우에만 추정치로 표시한다.
+        assertThat(memberJpaRepository.findPageByAge(55, pageRequest, CountMode.ESTIMATED)).isInstanceOf(EstimatedPage.class);
+        assertThat(memberJpaRepository.findPageByAge(56, PageRequest.of(0, 10), CountMode.ESTIMATED))
+                .isNotInstanceOf(EstimatedPage.class);
+    }
+
+    // username 이 null 인 회원은 다른 테스트의 조회를 깨므로 남기지 않는다.
+    @Test
+    @Rollback
+    public void keysetPaging() {
+        memberJpaRepository.save(new Member("keyset1", 33));
+        memberJpaRepository.save(new Member("keyset2", 33));
+        memberJpaRepository.save(new Member("keyset3", 33));
+        memberJpaRepository.save(new Member("keyset3", 33));
+        memberJpaRepository.save(new Member("keyset4", 33));
+        memberJpaRepository.save(new Member(null, 33));
+        memberJpaRepository.save(new Member(null, 33));
+
+        List<Member> visited = new ArrayList<>();
+        MemberCursor cursor = null;
+        KeysetSlice<Member> slice;
+        do {
+            slice = memberJpaRepository.findByPageAfter(33, cursor, 2);
+            visited.addAll(slice.getContent());
+            cursor = slice.hasNext() ? MemberCursor.decode(slice.getNextCursor()) : null;
+        } while (slice.hasNext());
+
+        assertThat(visited).extracting(Member::getUsername)
+                .containsExactly("keyset4", "keyset3", "keyset3", "keyset2", "keyset1", null, null);
+        assertThat(visited.get(1).getId()).isGreaterThan(visited.get(2).getId());
+        assertThat(visited.get(5).getId()).isGreaterThan(visited.get(6).getId());
+    }
+
+    // 예외가 테스트 트랜잭션을 rollback-only 로 만들지 않도록 트랜잭션 밖에서 부른다.
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void keysetPagingRejectsEmptyPage() {
+        assertThatThrownBy(() -> memberJpaRepository.findByPageAfter(33, null, 0))
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     public void bulkUpdate() throws Exception {
         // given
@@ -146,6 +217,21 @@ class MemberJpaRepositoryTest {
 
     }
 
+    @Test
+    @Rollback
+    public void saveAllBatched() {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            members.add(new Member("batch", i));
+        }
+
+        int savedCount = memberJpaRepository.saveAllBatched(members, 3);
+
+        assertThat(savedCount).isEqualTo(10);
+        assertThat(entityManager.contains(members.get(0))).isFalse();
+        assertThat(memberJpaRepository.findByUsername("batch").size()).isEqualTo(10);
+    }
+
     @Test
     public void emGetClass() throws Exception {
         System.out.println(entityManager);
@@ -1,5 +1,9 @@
 package study.datajpa.repository;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -7,14 +11,21 @@ import org.springframework.data.domain.*;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.transaction.annotation.Transactional;
 import study.datajpa.dto.MemberDto;
+import study.datajpa.dto.MemberSearchCondition;
 import study.datajpa.dto.UsernameDto;
 import study.datajpa.entity.Member;
 import study.datajpa.entity.Team;
+import study.datajpa.repository.support.NPlusOneDetector;
+import study.datajpa.repository.support.QueryScope;
+import study.datajpa.repository.support.UpsertResult;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -29,6 +40,12 @@ public class MemberRepositoryTest {
     @Autowired
     TeamRepository teamRepository;
 
+    @Autowired
+    NPlusOneDetector nPlusOneDetector;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
     @PersistenceContext
     EntityManager entityManager;
 
@@ -210,6 +227,22 @@ public class MemberRepositoryTest {
 
     }
 
+    @Test
+    @Rollback
+    public void keysetPaging() {
+        memberRepository.save(new Member("member1", 44));
+        memberRepository.save(new Member("member2", 44));
+        memberRepository.save(new Member("member3", 44));
+
+        KeysetSlice<Member> first = memberRepository.findKeysetByAge(44, null, 2);
+        KeysetSlice<Member> second = memberRepository.findKeysetByAge(44, first.getNextCursor(), 2);
+
+        assertThat(first.getContent()).extracting(Member::getUsername).containsExactly("member3", "member2");
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.getContent()).extracting(Member::getUsername).containsExactly("member1");
+        assertThat(second.hasNext()).isFalse();
+    }
+
     @Test
     public void bulkUpdate() throws Exception {
         memberRepository.save(new Member("AA", 10, null));
@@ -229,6 +262,200 @@ public class MemberRepositoryTest {
         assertThat(resultCount).isEqualTo(8);
     }
 
+    @Test
+    @Rollback
+    public void saveAllBatched() {
+        Team team = teamRepository.save(new Team("batchTeam"));
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            members.add(new Member("batchMember", i, team));
+        }
+
+        int savedCount = memberRepository.saveAllBatched(members, 4);
+
+        assertThat(savedCount).isEqualTo(10);
+        // 저장한 회원만 분리되고 호출한 쪽의 팀은 영속 상태로 남는다.
+        assertThat(members).noneMatch(entityManager::contains);
+        assertThat(entityManager.contains(team)).isTrue();
+        assertThat(memberRepository.findListByUsername("batchMember").size()).isEqualTo(10);
+    }
+
+    @Test
+    @Rollback
+    public void upsertAll() {
+        Team team = teamRepository.save(new Team("upsertTeam"));
+        Long existingId = memberRepository.save(new Member("upsertBefore", 10, team)).getId();
+        entityManager.flush();
+        entityManager.clear();
+        Member existing = memberRepository.findById(existingId).orElseThrow();
+        entityManager.clear();
+
+        Member changed = new Member("upsertAfter", 11);
+        changed.setId(existing.getId());
+        // 시퀀스는 양수만 만들므로 음수 id 는 새 행이다.
+        Member added = new Member("upsertAdded", 20, team);
+        added.setId(-existing.getId());
+
+        UpsertResult result = memberRepository.upsertAll(List.of(changed, added));
+
+        assertThat(result.getInserted()).isEqualTo(1);
+        assertThat(result.getUpdated()).isEqualTo(1);
+
+        Member updatedRow = memberRepository.findById(existing.getId()).orElseThrow();
+        assertThat(updatedRow.getUsername()).isEqualTo("upsertAfter");
+        assertThat(updatedRow.getVersion()).isEqualTo(existing.getVersion() + 1);
+        assertThat(updatedRow.getCreateTime()).isEqualTo(existing.getCreateTime());
+
+        Member addedRow = memberRepository.findById(added.getId()).orElseThrow();
+        assertThat(addedRow.getUsername()).isEqualTo("upsertAdded");
+        assertThat(addedRow.getTeam().getId()).isEqualTo(team.getId());
+        assertThat(addedRow.getCreatedBy()).isEqualTo("system");
+        // 기존 회원은 팀에서 빠지고 새 회원이 들어왔다.
+        assertThat(teamRepository.findById(team.getId()).orElseThrow().getMemberCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Rollback
+    public void upsertAllKeepsLastOfRepeatedId() {
+        Long existingId = memberRepository.save(new Member("upsertRepeatBefore", 10)).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        Member first = new Member("upsertRepeatFirst", 11);
+        first.setId(existingId);
+        Member last = new Member("upsertRepeatLast", 12);
+        last.setId(existingId);
+        Member added = new Member("upsertRepeatAdded", 20);
+        added.setId(-existingId);
+        Member addedAgain = new Member("upsertRepeatAddedAgain", 21);
+        addedAgain.setId(-existingId);
+
+        UpsertResult result = memberRepository.upsertAll(List.of(first, added, last, addedAgain));
+
+        assertThat(result.getInserted()).isEqualTo(1);
+        assertThat(result.getUpdated()).isEqualTo(1);
+        assertThat(memberRepository.findById(existingId).orElseThrow().getUsername()).isEqualTo("upsertRepeatLast");
+        Member addedRow = memberRepository.findById(-existingId).orElseThrow();
+        assertThat(addedRow.getUsername()).isEqualTo("upsertRepeatAddedAgain");
+        assertThat(addedRow.getVersion()).isEqualTo(addedAgain.getVersion());
+    }
+
+    @Test
+    @Rollback
+    public void memberCountWithoutInitializingMembers() {
+        Team team = teamRepository.save(new Team("countTeam"));
+        Team other = teamRepository.save(new Team("countOther"));
+        memberRepository.save(new Member("countMember1", 10, team));
+        Long movingId = memberRepository.save(new Member("countMember2", 10, team)).getId();
+        // 연관 편의 메서드를 거치지 않아도 DB 의 회원 수는 맞춰진다.
+        Member direct = new Member("countMember3", 10);
+        direct.setTeam(team);
+        Long directId = memberRepository.save(direct).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        Team loaded = teamRepository.findById(team.getId()).orElseThrow();
+        assertThat(loaded.getMemberCount()).isEqualTo(3);
+
+        memberRepository.findById(movingId).orElseThrow().changeTeam(teamRepository.findById(other.getId()).orElseThrow());
+        memberRepository.deleteById(directId);
+        assertThat(loaded.getMemberCount()).isEqualTo(2);
+        assertThat(Hibernate.isInitialized(loaded.getMembers())).isFalse();
+        entityManager.flush();
+        entityManager.clear();
+
+        Team reloaded = teamRepository.findById(team.getId()).orElseThrow();
+        assertThat(reloaded.getMemberCount()).isEqualTo(1);
+        assertThat(reloaded.getMembers().size()).isEqualTo(1);
+        assertThat(Hibernate.isInitialized(reloaded.getMembers())).isFalse();
+        assertThat(teamRepository.findById(other.getId()).orElseThrow().getMemberCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Rollback
+    public void addMemberThroughTeamProxy() {
+        Team teamA = teamRepository.save(new Team("proxyTeamA"));
+        Team teamB = teamRepository.save(new Team("proxyTeamB"));
+        Long memberId = memberRepository.save(new Member("proxyMember", 10, teamA)).getId();
+        entityManager.flush();
+        entityManager.clear();
+
+        Member member = memberRepository.findById(memberId).orElseThrow();
+        Team proxy = member.getTeam();
+        assertThat(Hibernate.isInitialized(proxy)).isFalse();
+
+        // 이미 속한 팀에 다시 넣어도 회원 수는 그대로다.
+        proxy.addMember(member);
+        teamRepository.findById(teamA.getId()).orElseThrow().addMember(member);
+        assertThat(proxy.getMemberCount()).isEqualTo(1);
+        assertThat(member.getTeam()).isSameAs(proxy);
+
+        teamRepository.findById(teamB.getId()).orElseThrow().addMember(member);
+        assertThat(proxy.getMemberCount()).isZero();
+        entityManager.flush();
+        entityManager.clear();
+
+        assertThat(teamRepository.findById(teamA.getId()).orElseThrow().getMemberCount()).isZero();
+        assertThat(teamRepository.findById(teamB.getId()).orElseThrow().getMemberCount()).isEqualTo(1);
+    }
+
+    @Test
+    @Rollback
+    public void auditColumnsShareTransactionStamp() {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            members.add(new Member("auditMember", i));
+        }
+        memberRepository.saveAllBatched(members, 4);
+
+        List<Member> saved = memberRepository.findListByUsername("auditMember");
+        assertThat(saved).extracting(Member::getCreateTime).containsOnly(saved.get(0).getCreateTime());
+        assertThat(saved).extracting(Member::getCreatedBy).containsOnly("system");
+        assertThat(saved.get(0).getUpdateTime()).isEqualTo(saved.get(0).getCreateTime());
+
+        Member member = saved.get(0);
+        member.setAge(100);
+        entityManager.flush();
+        entityManager.clear();
+
+        Member updated = memberRepository.findById(member.getId()).orElseThrow();
+        assertThat(updated.getLastModifiedBy()).isEqualTo("system");
+        assertThat(updated.getUpdateTime()).isEqualTo(member.getCreateTime());
+    }
+
+    @Test
+    @Rollback
+    public void streamAll() {
+        Team team = teamRepository.save(new Team("streamTeam"));
+        for (int i = 0; i < 5; i++) {
+            memberRepository.save(new Member("streamMember", i, team));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Member> streamed = new ArrayList<>();
+        try (Stream<Member> stream = memberRepository.streamAll(2)) {
+            stream.filter(m -> m.getUsername().equals("streamMember"))
+                    .forEach(streamed::add);
+        }
+
+        assertThat(streamed.size()).isEqualTo(5);
+        assertThat(streamed).noneMatch(entityManager::contains);
+        // 팀 프록시도 영속성 컨텍스트에 남지 않는다.
+        assertThat(streamed).extracting(Member::getTeam).noneMatch(entityManager::contains);
+
+        List<Member> visited = new ArrayList<>();
+        memberRepository.forEachMember(2, m -> {
+            if (m.getUsername().equals("streamMember")) {
+                visited.add(m);
+            }
+        });
+        assertThat(visited.size()).isEqualTo(5);
+        assertThat(visited).noneMatch(entityManager::contains);
+        assertThat(visited).extracting(Member::getTeam).noneMatch(entityManager::contains);
+    }
+
     @Test
     public void N_1_Problem() {
         Team teamA = teamRepository.save(new Team("teamA"));
@@ -269,6 +496,74 @@ public class MemberRepositoryTest {
         }
     }
 
+    @Test
+    @Rollback
+    public void batchFetch_Paging() {
+        for (int i = 0; i < 3; i++) {
+            Team team = teamRepository.save(new Team("batchFetchTeam" + i));
+            memberRepository.save(new Member("batchFetch", 10, team));
+            memberRepository.save(new Member("batchFetch", 20, team));
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        try (QueryScope scope = nPlusOneDetector.open("memberPage")) {
+            Page<Member> page = memberRepository.findMemberPage(PageRequest.of(0, 100));
+            for (Member member : page.getContent()) {
+                if (member.getTeam() != null) {
+                    member.getTeam().getName();
+                }
+            }
+            assertThat(scope.getFindings()).isEmpty();
+        }
+
+        try (QueryScope scope = nPlusOneDetector.open("teamPage")) {
+            Page<Team> page = teamRepository.findAll(PageRequest.of(0, 10));
+            for (Team team : page.getContent()) {
+                team.getMemberCount();
+                Hibernate.initialize(team.getMembers());
+            }
+            assertThat(scope.getFindings()).isEmpty();
+        }
+
+        // EXTRA 컬렉션의 size() 는 팀마다 count 쿼리를 날린다.
+        entityManager.clear();
+        try (QueryScope scope = nPlusOneDetector.open("teamSize")) {
+            Page<Team> page = teamRepository.findAll(PageRequest.of(0, 10));
+            for (Team team : page.getContent()) {
+                team.getMembers().size();
+            }
+            assertThat(scope.getFindings()).isNotEmpty();
+        }
+    }
+
+    @Test
+    @Rollback
+    public void findAllByIdsBatched() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Team team = teamRepository.save(new Team("multiGetTeam" + i));
+            ids.add(memberRepository.save(new Member("multiGet" + i, 10, team)).getId());
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Member cached = memberRepository.findById(ids.get(4)).orElseThrow();
+
+        try (QueryScope scope = nPlusOneDetector.open("multiGet")) {
+            List<Member> members = memberRepository.findAllByIdsBatched(
+                    List.of(ids.get(3), ids.get(0), -1L, ids.get(3), ids.get(4), ids.get(1)));
+
+            assertThat(members).extracting("username")
+                    .containsExactly("multiGet3", "multiGet0", "multiGet4", "multiGet1");
+            assertThat(members.get(2)).isSameAs(cached);
+            assertThat(scope.getStatementCount()).isEqualTo(1);
+        }
+
+        List<Team> teams = teamRepository.findAllByIdsBatched(List.of(-1L));
+        assertThat(teams).isEmpty();
+    }
+
     @Test
     public void fetchJoin_EntityGraph() {
         Team teamA = teamRepository.save(new Team("teamA"));
@@ -369,6 +664,55 @@ public class MemberRepositoryTest {
         assertThat(all.get(0).getUsername()).isEqualTo("m1");
     }
 
+    @Test
+    @Rollback
+    public void searchReusesQueryShape() {
+        Team teamA = teamRepository.save(new Team("searchTeamA"));
+        Team teamB = teamRepository.save(new Team("searchTeamB"));
+        memberRepository.save(new Member("search1", 10, teamA));
+        memberRepository.save(new Member("search2", 20, teamA));
+        memberRepository.save(new Member("search3", 30, teamB));
+        entityManager.flush();
+        entityManager.clear();
+
+        Counter hits = meterRegistry.counter("datajpa.dynamic.query.shapes", "result", "hit");
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsernamePrefix("search");
+        condition.setAgeGoe(15);
+        condition.setTeamIds(List.of(teamA.getId(), teamB.getId()));
+        Page<Member> first = memberRepository.search(condition, PageRequest.of(0, 10, Sort.by("age")));
+        double hitsBefore = hits.count();
+
+        // 값만 다르고 같은 조건 조합이면 캐시된 JPQL 을 쓴다.
+        condition.setAgeGoe(25);
+        condition.setTeamIds(List.of(teamB.getId()));
+        Page<Member> second = memberRepository.search(condition, PageRequest.of(0, 10, Sort.by("age")));
+
+        assertThat(first.getContent()).extracting("username").containsExactly("search2", "search3");
+        assertThat(second.getContent()).extracting("username").containsExactly("search3");
+        assertThat(hits.count()).isEqualTo(hitsBefore + 1);
+    }
+
+    @Test
+    @Rollback
+    public void findAllByExampleCached() {
+        Team teamA = new Team("exampleTeam");
+        entityManager.persist(teamA);
+        entityManager.persist(new Member("exampleMember", 0, teamA));
+        entityManager.persist(new Member("exampleMember2", 0, teamA));
+        entityManager.flush();
+        entityManager.clear();
+
+        Member probe = new Member("exampleMember");
+        probe.setTeam(new Team("exampleTeam"));
+        Example<Member> example = Example.of(probe, ExampleMatcher.matching().withIgnorePaths("age"));
+
+        assertThat(memberRepository.findAllByExampleCached(example))
+                .extracting("username")
+                .containsExactlyElementsOf(memberRepository.findAll(example).stream().map(Member::getUsername).collect(Collectors.toList()))
+                .containsExactly("exampleMember");
+    }
+
     @Test
     public void projections() {
         //given
@@ -396,4 +740,26 @@ public class MemberRepositoryTest {
 
         }
     }
+
+    @Test
+    @Rollback
+    public void columnProjections() {
+        Team team = new Team("columnTeam");
+        entityManager.persist(team);
+        entityManager.persist(new Member("columnMember", 10, team));
+        entityManager.persist(new Member("columnMember", 20));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<UsernameOnly> interfaceProjections = memberRepository.findProjectionsByUsername("columnMember");
+        List<MemberDto> classProjections = memberRepository.findColumnsByUsername("columnMember", MemberDto.class);
+        List<UsernameDto> usernames = memberRepository.findClassProjectionByUsername("columnMember");
+
+        assertThat(interfaceProjections).extracting(UsernameOnly::getTeamName).containsExactlyInAnyOrder("columnTeam", null);
+        assertThat(interfaceProjections).extracting(UsernameOnly::getUsername).containsOnly("columnMember");
+        assertThat(classProjections).extracting(MemberDto::getTeamName).containsExactlyInAnyOrder("columnTeam", null);
+        assertThat(usernames).extracting(UsernameDto::getUsername).containsExactly("columnMember", "columnMember");
+        // 엔티티를 만들지 않았으므로 영속성 컨텍스트가 비어 있다.
+        assertThat(entityManager.unwrap(Session.class).getStatistics().getEntityCount()).isZero();
+    }
 }
@@ -0,0 +1,77 @@
+package study.datajpa.repository;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 읽기 전용 트랜잭션 설정을 확인해야 하므로 테스트 전체를 트랜잭션으로 묶지 않는다.
+ */
+@SpringBootTest
+class ReadOnlyQueryTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @PersistenceContext
+    EntityManager em;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    TransactionTemplate tx;
+    TransactionTemplate readOnlyTx;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        readOnlyTx = new TransactionTemplate(transactionManager);
+        readOnlyTx.setReadOnly(true);
+    }
+
+    @AfterEach
+    void cleanUp() {
+        tx.executeWithoutResult(status ->
+                em.createQuery("delete from Member m where m.username like 'readOnly%'").executeUpdate());
+    }
+
+    @Test
+    public void readOnlyTransactionSkipsDirtyChecking() {
+        Long memberId = tx.execute(status -> memberRepository.save(new Member("readOnlyMember", 10)).getId());
+
+        readOnlyTx.executeWithoutResult(status -> {
+            Session session = em.unwrap(Session.class);
+            Member member = memberRepository.findById(memberId).orElseThrow();
+
+            assertThat(session.isReadOnly(member)).isTrue();
+            assertThat(session.getHibernateFlushMode()).isEqualTo(FlushMode.MANUAL);
+
+            member.setUsername("changed");
+        });
+
+        Member reloaded = memberRepository.findById(memberId).orElseThrow();
+        assertThat(reloaded.getUsername()).isEqualTo("readOnlyMember");
+    }
+
+    @Test
+    public void writesStillWorkWithoutOuterTransaction() {
+        Member member = memberJpaRepository.save(new Member("readOnlyJpaWriter", 10));
+
+        assertThat(memberJpaRepository.findById(member.getId())).isPresent();
+    }
+}
@@ -0,0 +1,106 @@
+package study.datajpa.repository;
+
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 2차 캐시는 커밋된 트랜잭션 사이에서 동작하므로 테스트 전체를 트랜잭션으로 묶지 않는다.
+ */
+@SpringBootTest
+class SecondLevelCacheTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamJpaRepository teamJpaRepository;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    EntityManager em;
+
+    TransactionTemplate tx;
+    Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        tx.executeWithoutResult(status -> {
+            em.createQuery("delete from Member m where m.username like 'secondLevel%'").executeUpdate();
+            em.createQuery("delete from Team t where t.name like 'secondLevel%'").executeUpdate();
+        });
+    }
+
+    @Test
+    public void teamIsServedFromCache() {
+        Long teamId = tx.execute(status -> {
+            Team team = teamJpaRepository.save(new Team("secondLevelTeam"));
+            memberRepository.save(new Member("secondLevelMember", 10, team));
+            return team.getId();
+        });
+        // 회원이 들어오면 커밋 때 팀 항목이 지워지므로(memberCount) 한 번 읽어 캐시에 다시 올린다.
+        tx.executeWithoutResult(status -> teamJpaRepository.findById(teamId).orElseThrow());
+        statistics.clear();
+
+        tx.executeWithoutResult(status -> teamJpaRepository.findById(teamId).orElseThrow());
+        tx.executeWithoutResult(status -> {
+            Team team = teamJpaRepository.findById(teamId).orElseThrow();
+            Hibernate.initialize(team.getMembers());
+            assertThat(team.getMembers()).hasSize(1);
+        });
+        tx.executeWithoutResult(status -> {
+            Team team = teamJpaRepository.findById(teamId).orElseThrow();
+            Hibernate.initialize(team.getMembers());
+            assertThat(team.getMembers()).hasSize(1);
+            assertThat(team.getMemberCount()).isEqualTo(1);
+        });
+
+        assertThat(statistics.getDomainDataRegionStatistics("team").getHitCount()).isGreaterThanOrEqualTo(3);
+        assertThat(statistics.getCollectionStatistics(Team.class.getName() + ".members").getCacheHitCount()).isEqualTo(1);
+        assertThat(statistics.getEntityStatistics(Team.class.getName()).getLoadCount()).isZero();
+    }
+
+    @Test
+    public void findByUsernameUsesQueryCacheAndSeesBulkUpdate() {
+        tx.executeWithoutResult(status -> memberRepository.save(new Member("secondLevelQueryMember", 70)));
+        tx.executeWithoutResult(status -> memberRepository.findByUsername("secondLevelQueryMember"));
+        statistics.clear();
+
+        List<Member> cached = tx.execute(status -> memberRepository.findByUsername("secondLevelQueryMember"));
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(1);
+        assertThat(cached.get(0).getAge()).isEqualTo(70);
+
+        // 벌크 연산은 영속성 컨텍스트를 우회하지만 Member 영역과 쿼리 캐시는 무효화되어야 한다.
+        tx.executeWithoutResult(status -> memberRepository.bulkAgePlus(70));
+
+        List<Member> afterBulk = tx.execute(status -> memberRepository.findByUsername("secondLevelQueryMember"));
+        assertThat(afterBulk.get(0).getAge()).isEqualTo(71);
+    }
+}
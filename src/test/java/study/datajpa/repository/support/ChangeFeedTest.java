@@ -0,0 +1,161 @@
+package study.datajpa.repository.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberJpaRepository;
+import study.datajpa.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 감사 시각은 트랜잭션마다 하나이므로, 벌크 수정으로 updateTime 이 바뀌는지 보려면 트랜잭션을 나눠야 한다.
+ * 방금 바뀐 행은 settle-time 이 지나야 보이므로 짧게 줄이고 읽기 전에 기다린다.
+ * (설정으로 바꾸면 컨텍스트가 따로 뜨면서 같은 DB 의 스키마를 다시 만들므로 테스트 동안만 필드를 바꾼다)
+ */
+@SpringBootTest
+class ChangeFeedTest {
+
+    static final long SETTLE_MILLIS = 300;
+
+    @Autowired
+    ChangeFeed changeFeed;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    Clock clock;
+
+    @PersistenceContext
+    EntityManager em;
+
+    TransactionTemplate tx;
+
+    Object settleTime;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        settleTime = ReflectionTestUtils.getField(changeFeed, "settleTime");
+        ReflectionTestUtils.setField(changeFeed, "settleTime", Duration.ofMillis(SETTLE_MILLIS));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        ReflectionTestUtils.setField(changeFeed, "settleTime", settleTime);
+        tx.executeWithoutResult(status ->
+                em.createQuery("delete from Member m where m.username like 'feed%'").executeUpdate());
+    }
+
+    @Test
+    public void bulkUpdatesMoveRowsPastWatermark() throws InterruptedException {
+        List<Long> ids = tx.execute(status -> List.of(
+                memberRepository.save(new Member("feedMember", 9120)).getId(),
+                memberRepository.save(new Member("feedMember", 9120)).getId()));
+        Member saved = tx.execute(status -> memberRepository.findById(ids.get(0)).orElseThrow());
+        ChangeWatermark start = new ChangeWatermark(saved.getUpdateTime(), 0L);
+        settle();
+
+        // 같은 시각에 저장된 두 행을 id 순으로 한 건씩 나눠 읽는다.
+        ChangeSlice<Member> first = tx.execute(status -> memberRepository.findChangesSince(start, 1));
+        assertThat(first.getContent()).extracting(Member::getId).containsExactly(ids.get(0));
+        assertThat(first.hasMore()).isTrue();
+        ChangeSlice<Member> second = tx.execute(status -> memberRepository.findChangesSince(first.getWatermark(), 10));
+        assertThat(second.getContent()).extracting(Member::getId).containsExactly(ids.get(1));
+        assertThat(second.hasMore()).isFalse();
+        ChangeSlice<Member> caughtUp = tx.execute(status -> memberRepository.findChangesSince(second.getWatermark(), 10));
+        assertThat(caughtUp.getContent()).isEmpty();
+        assertThat(caughtUp.getWatermark()).isEqualTo(second.getWatermark());
+
+        tx.executeWithoutResult(status -> memberRepository.bulkAgePlus(9120));
+        settle();
+        ChangeSlice<Member> afterQuery = tx.execute(status -> memberRepository.findChangesSince(second.getWatermark(), 10));
+        assertThat(afterQuery.getContent()).extracting(Member::getId).containsExactlyElementsOf(ids);
+        assertThat(afterQuery.getContent()).extracting(Member::getAge).containsOnly(9121);
+
+        memberJpaRepository.bulkAgePlus(9121);
+        settle();
+        ChangeSlice<Member> afterJpql = tx.execute(status -> memberRepository.findChangesSince(afterQuery.getWatermark(), 10));
+        assertThat(afterJpql.getContent()).extracting(Member::getAge).containsOnly(9122);
+
+        memberRepository.bulkAgePlus(9122, BulkUpdateOptions.chunkSize(1));
+        settle();
+        List<Member> streamed = new ArrayList<>();
+        ChangeWatermark end = changeFeed.stream(Member.class, afterJpql.getWatermark(), 1, streamed::addAll);
+        assertThat(streamed).extracting(Member::getId).containsExactlyElementsOf(ids);
+        assertThat(streamed).extracting(Member::getAge).containsOnly(9123);
+        assertThat(end).isEqualTo(ChangeWatermark.of(streamed.get(1), ids.get(1)));
+        assertThat(ChangeWatermark.decode(end.encode())).isEqualTo(end);
+    }
+
+    @Test
+    public void lateCommitBehindWatermarkIsNotSkipped() throws Exception {
+        ChangeWatermark start = new ChangeWatermark(LocalDateTime.now(clock), 0L);
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // 먼저 쓰기 시작한 트랜잭션이 나중에 시작한 트랜잭션보다 늦게 커밋한다.
+            Future<Long> late = executor.submit(() -> tx.execute(status -> {
+                Long id = memberRepository.saveAndFlush(new Member("feedLate", 9130)).getId();
+                written.countDown();
+                awaitQuietly(release);
+                return id;
+            }));
+            written.await();
+            Long early = tx.execute(status -> memberRepository.save(new Member("feedEarly", 9130)).getId());
+
+            // 먼저 커밋된 행도 아직 settle-time 안이라 워터마크가 늦은 커밋을 지나가지 않는다.
+            ChangeSlice<Member> beforeLateCommit = tx.execute(status -> memberRepository.findChangesSince(start, 10));
+            assertThat(beforeLateCommit.getContent()).isEmpty();
+            assertThat(beforeLateCommit.getWatermark()).isEqualTo(start);
+
+            release.countDown();
+            Long lateId = late.get();
+            settle();
+            ChangeSlice<Member> afterLateCommit = tx.execute(status ->
+                    memberRepository.findChangesSince(beforeLateCommit.getWatermark(), 10));
+            assertThat(afterLateCommit.getContent()).extracting(Member::getId).containsExactly(lateId, early);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private void settle() throws InterruptedException {
+        Thread.sleep(SETTLE_MILLIS + 50);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package study.datajpa.repository.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+/**
+ * 청크마다 커밋되는 것을 확인해야 하므로 테스트 전체를 트랜잭션으로 묶지 않는다.
+ */
+@SpringBootTest
+class ChunkedBulkUpdaterTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    ChunkedBulkUpdater chunkedBulkUpdater;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @PersistenceContext
+    EntityManager em;
+
+    @AfterEach
+    void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createQuery("delete from Member m where m.username like 'chunkedBulk%'").executeUpdate());
+    }
+
+    @Test
+    public void parallelChunks() {
+        saveMembers(770, 25);
+        List<BulkUpdateProgress> events = new CopyOnWriteArrayList<>();
+
+        BulkUpdateProgress progress = memberRepository.bulkAgePlus(770,
+                BulkUpdateOptions.chunkSize(10).parallel().onProgress(events::add));
+
+        assertThat(progress.getUpdatedRows()).isEqualTo(25);
+        assertThat(progress.isDone()).isTrue();
+        assertThat(progress.getResumeFrom()).isNull();
+        assertThat(events).hasSize(progress.getTotalChunks());
+        assertThat(countByAge(770)).isZero();
+        assertThat(countByAge(771)).isEqualTo(25);
+    }
+
+    @Test
+    public void resumeAfterFailedChunk() {
+        List<Member> members = saveMembers(780, 25);
+        Long poison = members.get(12).getId();
+
+        // poison id 를 만나면 0 으로 나누기 때문에 그 청크는 롤백된다.
+        ChunkedBulkUpdateException e = catchThrowableOfType(() -> chunkedBulkUpdater.execute(
+                ageUpdateFailingAt(poison), BulkUpdateOptions.chunkSize(10)), ChunkedBulkUpdateException.class);
+
+        assertThat(e).isNotNull();
+        assertThat(e.getProgress().getCompletedChunks()).isGreaterThan(0);
+        assertThat(e.getResumeFrom()).isLessThanOrEqualTo(poison);
+        assertThat(countByAge(781)).isEqualTo((int) e.getProgress().getUpdatedRows());
+
+        BulkUpdateProgress resumed = chunkedBulkUpdater.execute(
+                ageUpdateFailingAt(-1L), BulkUpdateOptions.chunkSize(10).resumeFrom(e.getResumeFrom()));
+
+        assertThat(e.getProgress().getUpdatedRows() + resumed.getUpdatedRows()).isEqualTo(25);
+        assertThat(countByAge(780)).isZero();
+        assertThat(countByAge(781)).isEqualTo(25);
+    }
+
+    @Test
+    public void clearsCallersPersistenceContext() {
+        Long id = saveMembers(790, 1).get(0).getId();
+
+        // OSIV 처럼 트랜잭션 없이 스레드에 묶인 영속성 컨텍스트
+        EntityManager boundEm = emf.createEntityManager();
+        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(boundEm));
+        try {
+            Member held = em.find(Member.class, id);
+
+            memberRepository.bulkAgePlus(790, BulkUpdateOptions.chunkSize(10).parallel());
+
+            assertThat(boundEm.contains(held)).isFalse();
+            assertThat(em.find(Member.class, id).getAge()).isEqualTo(791);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            boundEm.close();
+        }
+    }
+
+    private BulkUpdateSpec ageUpdateFailingAt(Long poison) {
+        return BulkUpdateSpec.update(Member.class, "e.age = e.age + 1 + 0 * (1 / (e.id - :poison))")
+                .where("e.age = :age")
+                .param("age", 780)
+                .param("poison", poison);
+    }
+
+    private List<Member> saveMembers(int age, int count) {
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            members.add(new Member("chunkedBulk" + i, age));
+        }
+        return memberRepository.saveAll(members);
+    }
+
+    private int countByAge(int age) {
+        return memberRepository.findByAge(age, PageRequest.of(0, 100)).getNumberOfElements();
+    }
+}
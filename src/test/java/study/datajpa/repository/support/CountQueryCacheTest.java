@@ -0,0 +1,95 @@
+package study.datajpa.repository.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 커밋/롤백 시점만 확인하면 되므로 스프링 컨텍스트 없이 트랜잭션 동기화를 직접 열고 닫는다.
+ */
+class CountQueryCacheTest {
+
+    AtomicLong tableRows = new AtomicLong();
+    CountQueryCache cache = new CountQueryCache(Duration.ofMinutes(1), 100, table -> OptionalLong.of(tableRows.get()));
+    AtomicInteger queries = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.unbindResourceIfPossible(cache);
+    }
+
+    @Test
+    public void countTakenBeforeCommitIsNotCachedAfterInvalidation() {
+        // 세는 도중 다른 트랜잭션의 쓰기가 커밋되어 무효화된다.
+        long stale = cache.count("member", "age=10", CountMode.UNTIL_WRITE, () -> {
+            queries.incrementAndGet();
+            cache.invalidate("member");
+            return 5;
+        });
+
+        long fresh = cache.count("member", "age=10", CountMode.UNTIL_WRITE, () -> {
+            queries.incrementAndGet();
+            return 6;
+        });
+
+        assertThat(stale).isEqualTo(5);
+        assertThat(fresh).isEqualTo(6);
+        assertThat(queries).hasValue(2);
+    }
+
+    @Test
+    public void writesInvalidateOnlyWhenCommitted() {
+        cache.count("member", "age=10", CountMode.UNTIL_WRITE, () -> 5);
+
+        // 쓰기를 한 트랜잭션은 캐시를 건너뛰고 직접 센다.
+        List<TransactionSynchronization> rolledBack = writeInTransaction();
+        assertThat(cache.count("member", "age=10", CountMode.UNTIL_WRITE, () -> 6)).isEqualTo(6);
+        complete(rolledBack, TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertThat(cache.count("member", "age=10", CountMode.UNTIL_WRITE, () -> 7)).isEqualTo(5);
+
+        List<TransactionSynchronization> committed = writeInTransaction();
+        complete(committed, TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(cache.count("member", "age=10", CountMode.UNTIL_WRITE, () -> 6)).isEqualTo(6);
+    }
+
+    @Test
+    public void estimateScalesLastExactCountWithTableRows() {
+        tableRows.set(1000);
+        assertThat(cache.count("member", "age=10", CountMode.ESTIMATED, () -> {
+            queries.incrementAndGet();
+            return 50;
+        })).isEqualTo(50);
+
+        // 커밋된 쓰기로 테이블이 커져도 다시 세지 않고 비율로 늘린다.
+        tableRows.set(1200);
+        cache.invalidate("member");
+        assertThat(cache.count("member", "age=10", CountMode.ESTIMATED, () -> {
+            queries.incrementAndGet();
+            return 70;
+        })).isEqualTo(60);
+        assertThat(queries).hasValue(1);
+    }
+
+    private List<TransactionSynchronization> writeInTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.onStatement("insert into member (age, member_id) values (?, ?)");
+        return TransactionSynchronizationManager.getSynchronizations();
+    }
+
+    private void complete(List<TransactionSynchronization> synchronizations, int status) {
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+}
@@ -0,0 +1,74 @@
+package study.datajpa.repository.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityDataLoaderTest {
+
+    List<List<Long>> batches = new CopyOnWriteArrayList<>();
+
+    EntityDataLoader<String> loader = new EntityDataLoader<>(this::loadNames, name -> Long.valueOf(name.substring(4)));
+
+    @Test
+    public void concurrentLoadsAreMergedIntoOneBatch() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<CompletableFuture<Optional<String>>>> submitted = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            long id = i % 5;
+            submitted.add(executor.submit(() -> {
+                start.await();
+                return loader.load(id);
+            }));
+        }
+        // 스레드들이 동시에 load 하도록 한꺼번에 풀어 준다.
+        start.countDown();
+        List<CompletableFuture<Optional<String>>> futures = new ArrayList<>();
+        for (Future<CompletableFuture<Optional<String>>> future : submitted) {
+            futures.add(future.get());
+        }
+        executor.shutdown();
+
+        loader.dispatch();
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder(0L, 1L, 2L, 3L, 4L);
+        assertThat(futures).allMatch(future -> future.join().isPresent());
+
+        // 이미 조회한 id 는 다시 조회하지 않는다.
+        assertThat(loader.load(3L).join()).contains("name3");
+        loader.dispatch();
+        assertThat(batches).hasSize(1);
+    }
+
+    @Test
+    public void loadManyKeepsInputOrder() {
+        CompletableFuture<List<String>> names = loader.loadMany(List.of(7L, 2L, 404L, 5L));
+
+        loader.dispatch();
+
+        assertThat(names.join()).containsExactly("name7", "name2", "name5");
+    }
+
+    // 404 는 없는 id
+    private List<String> loadNames(Collection<Long> ids) {
+        batches.add(new ArrayList<>(ids));
+        return ids.stream()
+                .filter(id -> id != 404L)
+                .map(id -> "name" + id)
+                .collect(Collectors.toList());
+    }
+}
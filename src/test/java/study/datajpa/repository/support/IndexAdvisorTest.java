@@ -0,0 +1,49 @@
+package study.datajpa.repository.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 인덱스를 지웠다가 다시 만드는 DDL 을 실행하므로 테스트 전체를 트랜잭션으로 묶지 않는다.
+ */
+@SpringBootTest
+class IndexAdvisorTest {
+
+    @Autowired
+    IndexAdvisor indexAdvisor;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void noAdviceWhenDeclaredIndexesCoverQueryMethods() {
+        assertThat(indexAdvisor.advise()).isEmpty();
+    }
+
+    @Test
+    public void reportsMissingIndexForUsernameFinders() {
+        jdbcTemplate.execute("drop index idx_member_username_age");
+        try {
+            List<IndexAdvice> advice = indexAdvisor.advise();
+
+            assertThat(advice).extracting(IndexAdvice::getReason).containsExactlyInAnyOrder(
+                    IndexAdvice.Reason.DECLARED_NOT_IN_SCHEMA, IndexAdvice.Reason.UNINDEXED_PREDICATE);
+            IndexAdvice unindexed = advice.stream()
+                    .filter(each -> each.getReason() == IndexAdvice.Reason.UNINDEXED_PREDICATE)
+                    .findFirst().orElseThrow();
+            assertThat(unindexed.getColumns()).containsExactly("username", "age");
+            assertThat(unindexed.getMethods()).contains("MemberRepository.findListByUsername",
+                    "MemberRepository.findLockByUsername", "MemberRepository.findByNames",
+                    "MemberRepository.findByUsername");
+            assertThat(unindexed.getMethods()).doesNotContain("MemberRepository.bulkAgePlus");
+        } finally {
+            jdbcTemplate.execute("create index idx_member_username_age on member (username, age)");
+        }
+    }
+}
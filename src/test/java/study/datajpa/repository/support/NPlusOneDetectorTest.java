@@ -0,0 +1,111 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.datajpa.entity.Member;
+import study.datajpa.entity.Team;
+import study.datajpa.repository.MemberRepository;
+import study.datajpa.repository.TeamRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+class NPlusOneDetectorTest {
+
+    @Autowired
+    NPlusOneDetector detector;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @PersistenceContext
+    EntityManager entityManager;
+
+    @Test
+    public void repeatedLookupsAreReported() {
+        saveMembersWithTeams("loopMember");
+
+        try (QueryScope scope = detector.open("lookupPerTeam")) {
+            List<Team> teams = teamRepository.findAll();
+            for (Team team : teams) {
+                memberRepository.findListByUsername(team.getName());
+            }
+
+            assertThat(scope.getFindings()).hasSize(1);
+            assertThat(scope.getFindings().get(0).getCount()).isEqualTo(teams.size());
+        }
+    }
+
+    @Test
+    public void lazyTeamLoadingIsBatched() {
+        saveMembersWithTeams("lazyMember");
+
+        try (QueryScope scope = detector.open("lazyTeams")) {
+            List<Member> members = memberRepository.findListByUsername("lazyMember");
+            for (Member member : members) {
+                member.getTeam().getName();
+            }
+
+            // default_batch_fetch_size 로 세 팀을 IN 쿼리 한 번에 가져온다.
+            assertThat(scope.getFindings()).isEmpty();
+            assertThat(scope.getStatementCount()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void entityGraphIsNotReported() {
+        saveMembersWithTeams("graphMember");
+
+        try (QueryScope scope = detector.open("entityGraph")) {
+            List<Member> members = memberRepository.findEntityGraphByUsername("graphMember");
+            for (Member member : members) {
+                member.getTeam().getName();
+            }
+
+            assertThat(scope.getFindings()).isEmpty();
+            assertThat(scope.getStatementCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void failFastDoesNotHideCallFailure() {
+        NPlusOneDetector failFast = new NPlusOneDetector(new SimpleMeterRegistry(), 3, true);
+        IllegalStateException failure = new IllegalStateException("call failed");
+
+        QueryScope scope = failFast.open("failing");
+        for (int i = 0; i < 3; i++) {
+            failFast.onStatement("select m.id from member m where m.team_id = " + i);
+        }
+        scope.closeAfter(failure);
+
+        assertThat(failure.getSuppressed()).hasSize(1).hasOnlyElementsOfType(NPlusOneDetectedException.class);
+        assertThat(failFast.isInside("manual")).isFalse();
+    }
+
+    @Test
+    public void shapeIgnoresLiteralsAndInListLength() {
+        String shape = NPlusOneDetector.shapeOf("select t.id from team t\n where t.id in (?, ?, ?) and t.name = 'A' and t.id > 10");
+
+        assertThat(shape).isEqualTo("select t.id from team t where t.id in (?) and t.name = ? and t.id > ?");
+    }
+
+    private void saveMembersWithTeams(String username) {
+        for (int i = 0; i < 3; i++) {
+            Team team = teamRepository.save(new Team(username + "Team" + i));
+            memberRepository.save(new Member(username, 10, team));
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
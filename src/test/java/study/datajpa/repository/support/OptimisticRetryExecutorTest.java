@@ -0,0 +1,87 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 스레드마다 각자 트랜잭션으로 같은 회원을 수정하므로 테스트 전체를 트랜잭션으로 묶지 않는다.
+ */
+@SpringBootTest
+class OptimisticRetryExecutorTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @PersistenceContext
+    EntityManager em;
+
+    @AfterEach
+    void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createQuery("delete from Member m where m.username like 'retry%'").executeUpdate());
+    }
+
+    @Test
+    public void concurrentUpdatesAreRetriedWithoutLosingIncrements() {
+        Long memberId = memberRepository.save(new Member("retryOptimisticMember", 0)).getId();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OptimisticRetryExecutor retry = new OptimisticRetryExecutor(transactionManager, registry,
+                100, Duration.ofMillis(1), Duration.ofMillis(20));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(CompletableFuture.runAsync(() -> retry.run("member.age", () -> {
+                Member member = memberRepository.findById(memberId).orElseThrow();
+                member.setAge(member.getAge() + 1);
+            }), executor));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        executor.shutdown();
+
+        Member member = memberRepository.findById(memberId).orElseThrow();
+        assertThat(member.getAge()).isEqualTo(20);
+        assertThat(member.getVersion()).isEqualTo(20L);
+        assertThat(registry.timer("datajpa.optimistic.execution", "name", "member.age", "outcome", "success").count())
+                .isEqualTo(20);
+        assertThat(registry.summary("datajpa.optimistic.attempts", "name", "member.age").totalAmount())
+                .isEqualTo(20 + registry.counter("datajpa.optimistic.conflicts", "name", "member.age").count());
+    }
+
+    @Test
+    public void pessimisticLockWaitIsRecorded() {
+        memberRepository.save(new Member("retryPessimisticMember", 0));
+        long before = meterRegistry.timer("datajpa.lock.wait", "method", "findLockByUsername", "mode", "PESSIMISTIC_WRITE").count();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                memberRepository.findLockByUsername("retryPessimisticMember"));
+
+        assertThat(meterRegistry.timer("datajpa.lock.wait", "method", "findLockByUsername", "mode", "PESSIMISTIC_WRITE").count())
+                .isEqualTo(before + 1);
+    }
+}
@@ -0,0 +1,114 @@
+package study.datajpa.repository.support;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.datajpa.entity.Member;
+import study.datajpa.repository.MemberJpaRepository;
+import study.datajpa.repository.MemberRepository;
+import study.datajpa.repository.TeamRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 트랜잭션 종료 시점의 1차 캐시 크기를 보려면 트랜잭션 경계가 테스트 안에 있어야 하므로 테스트 전체를 트랜잭션으로 묶지 않는다.
+ */
+@SpringBootTest
+class RepositoryMetricsAspectTest {
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    TeamRepository teamRepository;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @PersistenceContext
+    EntityManager em;
+
+    @AfterEach
+    void cleanUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                em.createQuery("delete from Member m where m.username like 'metrics%'").executeUpdate());
+    }
+
+    @Test
+    public void recordsInvocationsRowsAndStatements() {
+        String username = "metricsMember" + System.nanoTime();
+        memberRepository.saveAll(List.of(new Member(username, 1), new Member(username, 2), new Member(username, 3)));
+
+        long invocations = timer("MemberRepository", "findListByUsername").count();
+        double rows = summary(RepositoryMetricsAspect.ROWS, "MemberRepository", "findListByUsername").totalAmount();
+        double statements = summary(RepositoryMetricsAspect.STATEMENTS, "MemberRepository", "findListByUsername").totalAmount();
+
+        memberRepository.findListByUsername(username);
+
+        assertThat(timer("MemberRepository", "findListByUsername").count()).isEqualTo(invocations + 1);
+        assertThat(summary(RepositoryMetricsAspect.ROWS, "MemberRepository", "findListByUsername").totalAmount())
+                .isEqualTo(rows + 3);
+        assertThat(summary(RepositoryMetricsAspect.STATEMENTS, "MemberRepository", "findListByUsername").totalAmount())
+                .isEqualTo(statements + 1);
+
+        memberJpaRepository.findByUsername(username);
+        assertThat(timer("MemberJpaRepository", "findByUsername").count()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void inheritedMethodIsRecordedPerRepository() {
+        long memberCounts = timer("MemberRepository", "count").count();
+        long teamCounts = timer("TeamRepository", "count").count();
+
+        // count() 는 두 리포지토리 모두 CrudRepository 의 같은 Method 다.
+        memberRepository.count();
+        teamRepository.count();
+        teamRepository.count();
+
+        assertThat(timer("MemberRepository", "count").count()).isEqualTo(memberCounts + 1);
+        assertThat(timer("TeamRepository", "count").count()).isEqualTo(teamCounts + 2);
+    }
+
+    @Test
+    public void recordsPersistenceContextSizePerTransaction() {
+        String username = "metricsContextMember" + System.nanoTime();
+        memberRepository.saveAll(List.of(new Member(username, 1), new Member(username, 2), new Member(username, 3)));
+
+        DistributionSummary contextSize = meterRegistry.get(RepositoryMetricsAspect.PERSISTENCE_CONTEXT).summary();
+        long transactions = contextSize.count();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            memberRepository.findListByUsername(username);
+            memberRepository.findListByUsername(username);
+        });
+
+        assertThat(contextSize.count()).isEqualTo(transactions + 1);
+        assertThat(contextSize.max()).isGreaterThanOrEqualTo(3);
+    }
+
+    private Timer timer(String repository, String method) {
+        return Timer.builder("spring.data.repository.invocations")
+                .tags("repository", repository, "method", method, "state", "SUCCESS", "exception", "None")
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary summary(String name, String repository, String method) {
+        return DistributionSummary.builder(name).tags("repository", repository, "method", method).register(meterRegistry);
+    }
+}